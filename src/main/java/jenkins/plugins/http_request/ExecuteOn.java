@@ -0,0 +1,21 @@
+package jenkins.plugins.http_request;
+
+import hudson.util.ListBoxModel;
+
+/**
+ * Where a request of a step inside a {@code node} block is sent from.
+ * {@link #AUTO} stays on the controller unless files of the workspace are involved.
+ */
+public enum ExecuteOn {
+    AGENT,
+    CONTROLLER,
+    AUTO;
+
+    public static ListBoxModel getFillItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (ExecuteOn executeOn : values()) {
+            items.add(executeOn.name());
+        }
+        return items;
+    }
+}
@@ -43,9 +43,11 @@ import hudson.util.ListBoxModel;
 import hudson.util.ListBoxModel.Option;
 
 import jenkins.plugins.http_request.auth.FormAuthentication;
+import jenkins.plugins.http_request.util.CompressingEntity;
 import jenkins.plugins.http_request.util.HttpClientUtil;
 import jenkins.plugins.http_request.util.HttpRequestFormDataPart;
 import jenkins.plugins.http_request.util.HttpRequestNameValuePair;
+import jenkins.plugins.http_request.util.RetryPolicy;
 
 /**
  * @author Janario Oliveira
@@ -55,6 +57,7 @@ public class HttpRequest extends Builder {
     private final @NonNull String url;
     private Boolean ignoreSslErrors = DescriptorImpl.ignoreSslErrors;
     private HttpMode httpMode                 = DescriptorImpl.httpMode;
+    private HttpVersion httpVersion           = DescriptorImpl.httpVersion;
     private String httpProxy                  = DescriptorImpl.httpProxy;
     private String proxyAuthentication        = DescriptorImpl.proxyAuthentication;
     private Boolean passBuildParameters       = DescriptorImpl.passBuildParameters;
@@ -63,6 +66,8 @@ public class HttpRequest extends Builder {
     private MimeType acceptType               = DescriptorImpl.acceptType;
     private MimeType contentType              = DescriptorImpl.contentType;
     private String outputFile                 = DescriptorImpl.outputFile;
+    private int segments                      = DescriptorImpl.segments;
+    private String outputFileDigest           = DescriptorImpl.outputFileDigest;
     private Integer timeout                   = DescriptorImpl.timeout;
     private Boolean consoleLogResponseBody    = DescriptorImpl.consoleLogResponseBody;
     private Boolean quiet                     = DescriptorImpl.quiet;
@@ -73,6 +78,12 @@ public class HttpRequest extends Builder {
     private Boolean wrapAsMultipart           = DescriptorImpl.wrapAsMultipart;
     private Boolean useSystemProperties       = DescriptorImpl.useSystemProperties;
     private boolean useNtlm                   = DescriptorImpl.useNtlm;
+    private boolean useCache                  = DescriptorImpl.useCache;
+    private boolean coalesce                  = DescriptorImpl.coalesce;
+    private String compressRequest            = DescriptorImpl.compressRequest;
+    private int compressRequestThreshold      = DescriptorImpl.compressRequestThreshold;
+    private String acceptEncoding             = DescriptorImpl.acceptEncoding;
+    private RetryPolicy retry                 = DescriptorImpl.retry;
     private List<HttpRequestNameValuePair> customHeaders = DescriptorImpl.customHeaders;
     private List<HttpRequestFormDataPart> formData = DescriptorImpl.formData;
 
@@ -104,6 +115,15 @@ public class HttpRequest extends Builder {
         this.httpMode = httpMode;
     }
 
+    public HttpVersion getHttpVersion() {
+        return httpVersion;
+    }
+
+    @DataBoundSetter
+    public void setHttpVersion(HttpVersion httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
     public String getHttpProxy() {
         return httpProxy;
     }
@@ -168,6 +188,24 @@ public class HttpRequest extends Builder {
         this.outputFile = outputFile;
     }
 
+    public int getSegments() {
+        return segments;
+    }
+
+    @DataBoundSetter
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public String getOutputFileDigest() {
+        return outputFileDigest;
+    }
+
+    @DataBoundSetter
+    public void setOutputFileDigest(String outputFileDigest) {
+        this.outputFileDigest = outputFileDigest;
+    }
+
     public Integer getTimeout() {
         return timeout;
     }
@@ -308,6 +346,9 @@ public class HttpRequest extends Builder {
         if(wrapAsMultipart == null) {
             wrapAsMultipart = DescriptorImpl.wrapAsMultipart;
         }
+        if (httpVersion == null) {
+            httpVersion = DescriptorImpl.httpVersion;
+        }
         return this;
     }
 
@@ -349,6 +390,9 @@ public class HttpRequest extends Builder {
         if (acceptType != null && acceptType != MimeType.NOT_SET) {
             headers.add(new HttpRequestNameValuePair(HttpHeaders.ACCEPT, acceptType.getValue()));
         }
+        if (acceptEncoding != null && !acceptEncoding.isEmpty()) {
+            headers.add(new HttpRequestNameValuePair(HttpHeaders.ACCEPT_ENCODING, acceptEncoding));
+        }
         for (HttpRequestNameValuePair header : customHeaders) {
             String headerName = envVars.expand(header.getName());
             String headerValue = envVars.expand(header.getValue());
@@ -459,10 +503,65 @@ public class HttpRequest extends Builder {
         this.useNtlm = useNtlm;
     }
 
+    public boolean isUseCache() {
+        return useCache;
+    }
+
+    @DataBoundSetter
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    @DataBoundSetter
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public String getCompressRequest() {
+        return compressRequest;
+    }
+
+    @DataBoundSetter
+    public void setCompressRequest(String compressRequest) {
+        this.compressRequest = compressRequest != null ? compressRequest.trim() : "";
+    }
+
+    public int getCompressRequestThreshold() {
+        return compressRequestThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCompressRequestThreshold(int compressRequestThreshold) {
+        this.compressRequestThreshold = compressRequestThreshold;
+    }
+
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    @DataBoundSetter
+    public void setAcceptEncoding(String acceptEncoding) {
+        this.acceptEncoding = acceptEncoding != null ? acceptEncoding.trim() : "";
+    }
+
+    public RetryPolicy getRetry() {
+        return retry;
+    }
+
+    @DataBoundSetter
+    public void setRetry(RetryPolicy retry) {
+        this.retry = retry;
+    }
+
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
         public static final boolean ignoreSslErrors = false;
         public static final HttpMode httpMode                  = HttpMode.GET;
+        public static final HttpVersion httpVersion            = HttpVersion.HTTP_1_1;
         public static final String   httpProxy                 = "";
         public static final String proxyAuthentication         = "";
         public static final Boolean  passBuildParameters       = false;
@@ -471,6 +570,8 @@ public class HttpRequest extends Builder {
         public static final MimeType acceptType                = MimeType.NOT_SET;
         public static final MimeType contentType               = MimeType.NOT_SET;
         public static final String   outputFile                = "";
+        public static final int      segments                  = 1;
+        public static final String   outputFileDigest          = "";
         public static final int      timeout                   = 0;
         public static final Boolean  consoleLogResponseBody    = false;
         public static final Boolean  quiet                     = false;
@@ -481,6 +582,12 @@ public class HttpRequest extends Builder {
         public static final boolean  wrapAsMultipart           = true;
         public static final Boolean  useSystemProperties       = false;
         public static final boolean  useNtlm                   = false;
+        public static final boolean  useCache                  = false;
+        public static final boolean  coalesce                  = false;
+        public static final String   compressRequest           = "";
+        public static final int      compressRequestThreshold  = 1024;
+        public static final String   acceptEncoding            = "";
+        public static final RetryPolicy retry                  = null;
         public static final List<HttpRequestNameValuePair> customHeaders = Collections.emptyList();
         public static final List<HttpRequestFormDataPart> formData = Collections.emptyList();
 
@@ -503,6 +610,23 @@ public class HttpRequest extends Builder {
             return HttpMode.getFillItems();
         }
 
+        public ListBoxModel doFillHttpVersionItems() {
+            return HttpVersion.getFillItems();
+        }
+
+        public ListBoxModel doFillCompressRequestItems() {
+            return fillCompressRequestItems();
+        }
+
+        public static ListBoxModel fillCompressRequestItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("None", "");
+            for (String encoding : CompressingEntity.ENCODINGS) {
+                items.add(encoding);
+            }
+            return items;
+        }
+
         public ListBoxModel doFillAcceptTypeItems() {
             return MimeType.getContentTypeFillItems();
         }
@@ -592,6 +716,17 @@ public class HttpRequest extends Builder {
             return checkValidResponseCodes(value);
         }
 
+        public FormValidation doCheckSegments(@QueryParameter int value) {
+            return checkSegments(value);
+        }
+
+        public static FormValidation checkSegments(int value) {
+            if (value < 1) {
+                return FormValidation.error("Segments must be at least 1");
+            }
+            return FormValidation.ok();
+        }
+
         public static FormValidation checkValidResponseCodes(String value) {
             if (value == null || value.trim().isEmpty()) {
                 return FormValidation.ok();
@@ -0,0 +1,208 @@
+package jenkins.plugins.http_request;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import jenkins.security.MasterToSlaveCallable;
+
+/**
+ * Executes several requests with a single remoting call, returning the responses in the same order.
+ */
+public final class HttpRequestBatchStep extends Step {
+
+    private final @NonNull List<HttpRequestStep> requests;
+    private int parallelism = DescriptorImpl.parallelism;
+
+    @DataBoundConstructor
+    public HttpRequestBatchStep(@NonNull List<HttpRequestStep> requests) {
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+    }
+
+    @NonNull
+    public List<HttpRequestStep> getRequests() {
+        return requests;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @DataBoundSetter
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(context, this);
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor {
+        public static final int parallelism = 10;
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            Set<Class<?>> context = new HashSet<>();
+            Collections.addAll(context, Run.class, TaskListener.class);
+            return Collections.unmodifiableSet(context);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "httpRequestBatch";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Perform several HTTP Requests and return a list of response objects";
+        }
+
+        public FormValidation doCheckParallelism(@QueryParameter int value) {
+            if (value < 1) {
+                return FormValidation.error("Parallelism must be at least 1");
+            }
+            return FormValidation.ok();
+        }
+    }
+
+    public static final class Execution extends SynchronousNonBlockingStepExecution<List<ResponseContentSupplier>> {
+
+        private final transient HttpRequestBatchStep step;
+
+        Execution(@NonNull StepContext context, HttpRequestBatchStep step) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        protected List<ResponseContentSupplier> run() throws Exception {
+            TaskListener listener = Objects.requireNonNull(getContext().get(TaskListener.class));
+            List<HttpRequestExecution> execs = new ArrayList<>(step.getRequests().size());
+            for (HttpRequestStep request : step.getRequests()) {
+                execs.add(HttpRequestExecution.from(request,
+                        request.getQuiet() ? TaskListener.NULL : listener,
+                        new HttpRequestStep.Execution(getContext(), request)));
+            }
+            BatchCallable batch = new BatchCallable(execs, step.getParallelism());
+
+            List<ResponseContentSupplier> responses;
+            Launcher launcher = getContext().get(Launcher.class);
+            if (launcher != null) {
+                VirtualChannel channel = launcher.getChannel();
+                if (channel == null) {
+                    throw new IllegalStateException("Launcher doesn't support remoting but it is required");
+                }
+                responses = channel.call(batch);
+            } else {
+                responses = batch.call();
+            }
+            Run<?, ?> run = getContext().get(Run.class);
+            for (ResponseContentSupplier response : responses) {
+                response.deleteSpillFileWhenFinalized(run);
+            }
+            return responses;
+        }
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Runs the executions on the JVM it is sent to, sharing that JVM's connection pools.
+     * Every request is executed even if some fail; the first failure is rethrown with the others suppressed.
+     */
+    static final class BatchCallable extends MasterToSlaveCallable<List<ResponseContentSupplier>, RuntimeException> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final List<HttpRequestExecution> execs;
+        private final int parallelism;
+
+        BatchCallable(List<HttpRequestExecution> execs, int parallelism) {
+            this.execs = execs;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public List<ResponseContentSupplier> call() throws RuntimeException {
+            if (execs.isEmpty()) {
+                return new ArrayList<>();
+            }
+            int threads = Math.max(1, Math.min(parallelism, execs.size()));
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                    new NamingThreadFactory(Executors.defaultThreadFactory(), "httpRequestBatch"));
+            try {
+                List<Future<ResponseContentSupplier>> futures = new ArrayList<>(execs.size());
+                for (HttpRequestExecution exec : execs) {
+                    futures.add(executor.submit(exec::call));
+                }
+
+                List<ResponseContentSupplier> responses = new ArrayList<>(execs.size());
+                RuntimeException failure = null;
+                for (Future<ResponseContentSupplier> future : futures) {
+                    try {
+                        responses.add(future.get());
+                    } catch (ExecutionException e) {
+                        RuntimeException cause = e.getCause() instanceof RuntimeException runtimeException ?
+                                runtimeException : new IllegalStateException(e.getCause());
+                        if (failure == null) {
+                            failure = cause;
+                        } else {
+                            failure.addSuppressed(cause);
+                        }
+                    }
+                }
+                if (failure != null) {
+                    for (ResponseContentSupplier response : responses) {
+                        closeQuietly(response, failure);
+                    }
+                    throw failure;
+                }
+                return responses;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private static void closeQuietly(ResponseContentSupplier response, RuntimeException failure) {
+            try {
+                response.close();
+            } catch (Exception e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+}
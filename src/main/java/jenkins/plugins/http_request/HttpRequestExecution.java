@@ -7,56 +7,70 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Serial;
 import java.net.ConnectException;
-import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyManagementException;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509ExtendedTrustManager;
-
 import org.apache.commons.io.IOUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
 import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.protocol.HttpClientContext;
-import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
-import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.client5.http.config.RequestConfig;
-import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
-import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.utils.URIUtils;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.config.Registry;
-import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.FileEntity;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.util.TimeValue;
 import org.apache.hc.client5.http.entity.mime.HttpMultipartMode;
 import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
 import org.apache.hc.client5.http.entity.mime.FileBody;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardCertificateCredentials;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
-import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
 
 import hudson.AbortException;
 import hudson.CloseProofOutputStream;
@@ -67,8 +81,9 @@ import hudson.model.Item;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.remoting.RemoteOutputStream;
-import hudson.security.ACL;
+import hudson.util.NamingThreadFactory;
 import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.SystemProperties;
 
 import jenkins.plugins.http_request.HttpRequest.DescriptorImpl;
 import jenkins.plugins.http_request.HttpRequestStep.Execution;
@@ -77,10 +92,26 @@ import jenkins.plugins.http_request.auth.CertificateAuthentication;
 import jenkins.plugins.http_request.auth.CredentialBasicAuthentication;
 import jenkins.plugins.http_request.auth.CredentialNtlmAuthentication;
 import jenkins.plugins.http_request.util.BackWardCompatibleRedirectStrategy;
+import jenkins.plugins.http_request.util.BatchingOutputStream;
+import jenkins.plugins.http_request.util.Bulkhead;
+import jenkins.plugins.http_request.util.CircuitBreaker;
+import jenkins.plugins.http_request.util.CircuitBreakerSettings;
+import jenkins.plugins.http_request.util.CompressingEntity;
+import jenkins.plugins.http_request.util.ConcurrencyLimit;
+import jenkins.plugins.http_request.util.ContentDecoders;
+import jenkins.plugins.http_request.util.ContentMatcher;
+import jenkins.plugins.http_request.util.HttpClientRegistry;
 import jenkins.plugins.http_request.util.HttpClientUtil;
 import jenkins.plugins.http_request.util.HttpRequestFormDataPart;
 import jenkins.plugins.http_request.util.HttpRequestNameValuePair;
+import jenkins.plugins.http_request.util.OutputFileWriter;
+import jenkins.plugins.http_request.util.RateLimiter;
 import jenkins.plugins.http_request.util.RequestAction;
+import jenkins.plugins.http_request.util.RequestFingerprint;
+import jenkins.plugins.http_request.util.ResponseCache;
+import jenkins.plugins.http_request.util.RetryPolicy;
+import jenkins.plugins.http_request.util.RunCredentials;
+import jenkins.plugins.http_request.util.SslContextCache;
 
 /**
  * @author Janario Oliveira
@@ -89,8 +120,32 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
 
     @Serial
     private static final long serialVersionUID = -2066857816168989599L;
+
+    /**
+     * How many times in a row an interrupted download is resumed without making progress.
+     */
+    private static final int MAX_RESUMES = SystemProperties.getInteger(HttpRequestExecution.class.getName() + ".maxResumes", 5);
+
+    /**
+     * Segmented downloads never use segments smaller than this. Read on every download, so it can be
+     * changed at run time on each node.
+     */
+    static final String MIN_SEGMENT_BYTES_PROPERTY = HttpRequestExecution.class.getName() + ".minSegmentBytes";
+
+    /**
+     * The responses of the coalesced requests in flight in this JVM, completed with {@code null}
+     * when they cannot be shared.
+     */
+    private static final Map<String, CompletableFuture<ResponseContentSupplier.Shared>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /**
+     * The {@code Content-Encoding} of the last body received in a context, as sent by the server.
+     */
+    private static final String RECEIVED_CONTENT_ENCODING = HttpRequestExecution.class.getName() + ".contentEncoding";
+
     private final String url;
     private final HttpMode httpMode;
+    private final HttpVersion httpVersion;
     private final boolean ignoreSslErrors;
     private final HttpHost httpProxy;
     private final StandardUsernamePasswordCredentials proxyCredentials;
@@ -108,11 +163,30 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
     private final String validResponseCodes;
     private final String validResponseContent;
     private final FilePath outputFile;
+    private final int segments;
+    private final String outputFileDigest;
     private final int timeout;
     private final boolean consoleLogResponseBody;
     private final ResponseHandle responseHandle;
+    private final boolean useCache;
+    private final boolean coalesce;
+    private final String compressRequest;
+    private final int compressRequestThreshold;
+    private final RetryPolicy retry;
+    private final CircuitBreakerSettings circuitBreaker;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final RateLimiter.Throttle throttle;
 
     private final Authenticator authenticator;
+    /**
+     * The run, or else the item, whose identical requests in flight may share a response.
+     */
+    private final String coalesceScope;
+    private transient String fingerprint;
+    /**
+     * The slot of {@link #concurrencyLimit} held by the attempt in progress.
+     */
+    private transient Bulkhead.Slot slot;
 
     private final OutputStream remoteLogger;
     private transient PrintStream localLogger;
@@ -132,16 +206,17 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
             List<HttpRequestFormDataPart> formData = http.resolveFormDataParts(envVars, build);
 
             return new HttpRequestExecution(
-                    url, http.getHttpMode(), http.getIgnoreSslErrors(),
+                    url, http.getHttpMode(), http.getHttpVersion(), http.getIgnoreSslErrors(),
                     http.getHttpProxy(), http.getProxyAuthentication(),
                     body, headers, http.getTimeout(),
                     uploadFile, http.getMultipartName(), http.getWrapAsMultipart(),
                     http.getAuthentication(), http.isUseNtlm(), http.getUseSystemProperties(),
-                    formData,
+                    formData, http.getCompressRequest(), http.getCompressRequestThreshold(),
 
                     http.getValidResponseCodes(), http.getValidResponseContent(),
                     http.getConsoleLogResponseBody(), outputFile,
-                    ResponseHandle.NONE,
+                    http.getSegments(), http.getOutputFileDigest(),
+                    ResponseHandle.NONE, http.isUseCache(), http.isCoalesce(), http.getRetry(),
 
                     project,
                     run,
@@ -163,53 +238,50 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         Run<?, ?> run = execution.getContext().get(Run.class);
 
         return new HttpRequestExecution(
-                step.getUrl(), step.getHttpMode(), step.isIgnoreSslErrors(),
+                step.getUrl(), step.getHttpMode(), step.getHttpVersion(), step.isIgnoreSslErrors(),
                 step.getHttpProxy(), step.getProxyAuthentication(),
                 step.getRequestBody(), headers, step.getTimeout(),
                 uploadFile, step.getMultipartName(), step.isWrapAsMultipart(),
                 step.getAuthentication(), step.isUseNtlm(), step.getUseSystemProperties(),
-                formData,
+                formData, step.getCompressRequest(), step.getCompressRequestThreshold(),
 
                 step.getValidResponseCodes(), step.getValidResponseContent(),
                 step.getConsoleLogResponseBody(), outputFile,
-                step.getResponseHandle(),
+                step.getSegments(), step.getOutputFileDigest(),
+                step.getResponseHandle(), step.isUseCache(), step.isCoalesce(), step.getRetry(),
                 project, run, taskListener.getLogger());
     }
 
     private HttpRequestExecution(
-            String url, HttpMode httpMode, boolean ignoreSslErrors,
+            String url, HttpMode httpMode, HttpVersion httpVersion, boolean ignoreSslErrors,
             String httpProxy, String proxyAuthentication, String body,
             List<HttpRequestNameValuePair> headers, Integer timeout,
             FilePath uploadFile, String multipartName, boolean wrapAsMultipart,
             String authentication, boolean useNtlm, boolean useSystemProperties,
-            List<HttpRequestFormDataPart> formData,
+            List<HttpRequestFormDataPart> formData, String compressRequest, int compressRequestThreshold,
 
             String validResponseCodes, String validResponseContent,
             Boolean consoleLogResponseBody, FilePath outputFile,
-            ResponseHandle responseHandle,
+            int segments, String outputFileDigest,
+            ResponseHandle responseHandle, boolean useCache, boolean coalesce, RetryPolicy retry,
 
             Item project, Run<?, ?> run, PrintStream logger
     ) {
         this.url = url;
         this.httpMode = httpMode;
+        this.httpVersion = httpVersion != null ? httpVersion : HttpVersion.HTTP_1_1;
         this.ignoreSslErrors = ignoreSslErrors;
 
 		if (httpProxy != null && !httpProxy.isBlank()) {
 			this.httpProxy = HttpHost.create(URI.create(httpProxy));
 			if (proxyAuthentication != null && !proxyAuthentication.isBlank()) {
 
-                StandardCredentials credential = CredentialsMatchers.firstOrNull(
-                        CredentialsProvider.lookupCredentialsInItem(
-                                StandardCredentials.class,
-                                project, ACL.SYSTEM2,
-                                URIRequirementBuilder.fromUri(url).build()),
-                        CredentialsMatchers.withId(proxyAuthentication));
+                RunCredentials.Resolved credential = RunCredentials.resolve(project, run, url, proxyAuthentication);
 
-                CredentialsProvider.trackAll(run, credential);
+                RunCredentials.track(run, credential);
 
-                if (credential instanceof StandardUsernamePasswordCredentials standardUsernamePasswordCredentials) {
-                    // create snapshot of credentials because it needs to be serialized to the agent
-                    this.proxyCredentials = CredentialsProvider.snapshot(standardUsernamePasswordCredentials);
+                if (credential != null && credential.getSnapshot() instanceof StandardUsernamePasswordCredentials standardUsernamePasswordCredentials) {
+                    this.proxyCredentials = standardUsernamePasswordCredentials;
                 } else {
                     this.proxyCredentials = null;
                     throw new IllegalStateException("Proxy authentication '" + proxyAuthentication + "' doesn't exist anymore or is not a username/password credential type");
@@ -225,24 +297,24 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         this.body = body;
         this.headers = headers;
         this.formData = formData;
+        this.compressRequest = compressRequest != null ? compressRequest.trim() : "";
+        if (!this.compressRequest.isEmpty() && !CompressingEntity.ENCODINGS.contains(this.compressRequest)) {
+            throw new IllegalArgumentException("Unsupported request compression: " + compressRequest
+                    + ", use one of " + CompressingEntity.ENCODINGS);
+        }
+        this.compressRequestThreshold = compressRequestThreshold;
         this.timeout = timeout != null ? timeout : -1;
         this.useNtlm = useNtlm;
         if (authentication != null && !authentication.isEmpty()) {
             Authenticator auth = HttpRequestGlobalConfig.get().getAuthentication(authentication);
 
             if (auth == null) {
-                StandardCredentials credential = CredentialsMatchers.firstOrNull(
-                        CredentialsProvider.lookupCredentialsInItem(
-                                StandardCredentials.class,
-                                project, ACL.SYSTEM2,
-                                URIRequirementBuilder.fromUri(url).build()),
-                        CredentialsMatchers.withId(authentication));
-
-                CredentialsProvider.trackAll(run, credential);
-
-                if (credential != null) {
-                    // create snapshot of credential because it needs to be serialized to the agent
-                    credential = CredentialsProvider.snapshot(credential);
+                RunCredentials.Resolved resolved = RunCredentials.resolve(project, run, url, authentication);
+
+                RunCredentials.track(run, resolved);
+
+                if (resolved != null) {
+                    StandardCredentials credential = resolved.getSnapshot();
                     if (credential instanceof StandardUsernamePasswordCredentials standardUsernamePasswordCredentials) {
                         if (this.useNtlm) {
                             auth = new CredentialNtlmAuthentication(standardUsernamePasswordCredentials);
@@ -272,9 +344,20 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         this.validResponseCodes = validResponseCodes;
         this.validResponseContent = validResponseContent != null ? validResponseContent : "";
         this.consoleLogResponseBody = Boolean.TRUE.equals(consoleLogResponseBody);
-        this.responseHandle = this.consoleLogResponseBody || !this.validResponseContent.isEmpty() ?
+        // content validation streams through the body, a response left open must be read upfront to keep it readable
+        this.responseHandle = this.consoleLogResponseBody
+                || (!this.validResponseContent.isEmpty() && responseHandle == ResponseHandle.LEAVE_OPEN) ?
                 ResponseHandle.STRING : responseHandle;
         this.outputFile = outputFile;
+        this.segments = segments;
+        this.outputFileDigest = outputFileDigest != null ? outputFileDigest.trim() : "";
+        this.useCache = useCache;
+        this.coalesce = coalesce;
+        this.retry = retry;
+        this.circuitBreaker = HttpRequestGlobalConfig.get().getCircuitBreaker();
+        this.concurrencyLimit = HttpRequestGlobalConfig.get().getConcurrencyLimit(url);
+        this.throttle = RateLimiter.throttle(HttpRequestGlobalConfig.get().getRateLimits(url, authentication));
+        this.coalesceScope = run != null ? run.getExternalizableId() : project != null ? project.getFullName() : "";
 
         this.localLogger = logger;
         this.remoteLogger = new RemoteOutputStream(new CloseProofOutputStream(logger));
@@ -282,35 +365,232 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
 
     @Override
     public ResponseContentSupplier call() throws RuntimeException {
+        try {
+            logRequest();
+            if (httpVersion == HttpVersion.HTTP_2) {
+                if (isAsyncCapable()) {
+                    return sendAndWait();
+                }
+                logger().println("HTTP/2 is not available with workspace files, form-data, caching, coalescing, retries, concurrency or rate limits or this authentication, using HTTP/1.1");
+            }
+            return authAndRequest();
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            // the log of the request reaches the build before its outcome
+            logger().flush();
+        }
+    }
+
+    private ResponseContentSupplier sendAndWait() throws IOException, InterruptedException {
+        CompletableFuture<ResponseContentSupplier> result = new CompletableFuture<>();
+        Future<SimpleHttpResponse> future = send(new FutureCallback<>() {
+            @Override
+            public void completed(ResponseContentSupplier response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                result.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Whether {@link #callAsync} can serve this request. The non-blocking engine keeps the body in
+     * memory on the JVM that starts it, so workspace files and authentications that drive the
+     * client themselves still need {@link #call()}, as do the response cache, coalescing, retries
+     * and concurrency and rate limits, whose waits block.
+     */
+    boolean isAsyncCapable() {
+        return !useCache && !coalesce && retry == null && concurrencyLimit == null && throttle == null && uploadFile == null && outputFile == null && (formData == null || formData.isEmpty())
+                && (authenticator == null || authenticator instanceof CredentialBasicAuthentication);
+    }
+
+    /**
+     * Executes the request on the shared async client of this JVM without blocking the caller.
+     * The callback runs on an I/O reactor thread once the response has been validated.
+     */
+    Future<SimpleHttpResponse> callAsync(FutureCallback<ResponseContentSupplier> callback) {
+        logRequest();
+        return send(callback);
+    }
+
+    private Future<SimpleHttpResponse> send(FutureCallback<ResponseContentSupplier> callback) {
+        SimpleHttpRequest request = createAsyncRequest();
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(createRequestConfig());
+        try {
+            authAsync(context, URIUtils.extractHost(request.getUri()));
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        CircuitBreaker.Permit permit;
+        try {
+            permit = circuitBreaker(request.getUri());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        } catch (CircuitBreaker.OpenException e) {
+            callback.failed(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return sendThroughBreaker(request, context, permit, callback);
+        } catch (RuntimeException e) {
+            // never handed to the client, none of its callbacks will give the permit back
+            if (permit != null) {
+                permit.release();
+            }
+            throw e;
+        }
+    }
+
+    private Future<SimpleHttpResponse> sendThroughBreaker(SimpleHttpRequest request, HttpClientContext context,
+                                                          CircuitBreaker.Permit permit,
+                                                          FutureCallback<ResponseContentSupplier> callback) {
+        long start = System.nanoTime();
+
+        logger().println("Sending request to url: " + url);
+        return asyncClient().execute(SimpleRequestProducer.create(request), SimpleResponseConsumer.create(), context,
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        if (httpVersion == HttpVersion.HTTP_2) {
+                            logger().println("Protocol: " + context.getProtocolVersion());
+                        }
+                        logger().println("Response Code: " + response.getCode());
+                        if (permit != null) {
+                            permit.record(circuitBreaker, isBreakerFailure(response.getCode()), elapsedMillis(start));
+                        }
+                        ContentDecoders.Counter decoded = new ContentDecoders.Counter();
+                        ResponseContentSupplier responseContentSupplier;
+                        try {
+                            responseContentSupplier = new ResponseContentSupplier(responseHandle, decode(response, decoded));
+                        } catch (IOException e) {
+                            callback.failed(e);
+                            return;
+                        }
+                        logDecoded(responseContentSupplier, decoded);
+                        completeAsync(callback, responseContentSupplier);
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        if (permit != null) {
+                            permit.record(circuitBreaker, !(ex instanceof UnknownHostException), elapsedMillis(start));
+                        }
+                        if (ex instanceof UnknownHostException) {
+                            logger().println("Treating UnknownHostException(" + ex.getMessage() + ") as 404 Not Found");
+                            completeAsync(callback, new ResponseContentSupplier("UnknownHostException as 404 Not Found", 404));
+                        } else if (ex instanceof SocketTimeoutException || ex instanceof ConnectException) {
+                            logger().println("Treating " + ex.getClass() + "(" + ex.getMessage() + ") as 408 Request Timeout");
+                            completeAsync(callback, new ResponseContentSupplier(ex.getClass() + "(" + ex.getMessage() + ") as 408 Request Timeout", 408));
+                        } else {
+                            callback.failed(ex);
+                        }
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        if (permit != null) {
+                            permit.release();
+                        }
+                        callback.cancelled();
+                    }
+                });
+    }
+
+    /**
+     * Decodes the body of a response of the async client, which leaves it as received.
+     */
+    private static SimpleHttpResponse decode(SimpleHttpResponse response, ContentDecoders.Counter counter) throws IOException {
+        Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        byte[] body = response.getBodyBytes();
+        if (contentEncoding == null || body == null) {
+            return response;
+        }
+        byte[] decoded = ContentDecoders.decode(contentEncoding.getValue(), body, counter);
+        if (decoded == null) {
+            return response;
+        }
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        response.setBody(decoded, response.getContentType());
+        return response;
+    }
+
+    private void logDecoded(ResponseContentSupplier response, ContentDecoders.Counter decoded) {
+        if (decoded.getEncoding() == null) {
+            return;
+        }
+        response.setDecoded(decoded);
+        logger().println("Response body decoded from " + decoded.getEncoding() + ": " + decoded.getEncodedBytes()
+                + " bytes received for " + decoded.getDecodedBytes() + " bytes");
+    }
+
+    private void completeAsync(FutureCallback<ResponseContentSupplier> callback, ResponseContentSupplier response) {
+        try {
+            processResponse(response, null);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            callback.failed(e);
+            return;
+        }
+        callback.completed(response);
+    }
+
+    private void logRequest() {
         logger().println("HttpMethod: " + httpMode);
         logger().println("URL: " + url);
         for (HttpRequestNameValuePair header : headers) {
             logger().print(header.getName() + ": ");
             logger().println(header.getMaskValue() ? "*****" : header.getValue());
         }
-
-        try {
-            return authAndRequest();
-        } catch (IOException | InterruptedException | NoSuchAlgorithmException | KeyManagementException e) {
-            throw new IllegalStateException(e);
-        }
     }
 
     private PrintStream logger() {
         if (localLogger == null) {
-            localLogger = new PrintStream(remoteLogger, true, StandardCharsets.UTF_8);
+            // on an agent, lines are sent to the build log in batches rather than one remoting call each
+            localLogger = new PrintStream(new BatchingOutputStream(remoteLogger), false, StandardCharsets.UTF_8);
         }
         return localLogger;
     }
 
     private ResponseContentSupplier authAndRequest()
-            throws IOException, InterruptedException, NoSuchAlgorithmException, KeyManagementException {
+            throws IOException, InterruptedException {
         //only leave open if no error happen
         ResponseHandle responseHandle = ResponseHandle.NONE;
         CloseableHttpClient httpclient = null;
+        ResponseContentSupplier response = null;
+        ContentDecoders.Counter decoded = new ContentDecoders.Counter();
         try {
+            // taken before authenticating, which may send requests of its own
+            acquireSlot();
             HttpClientBuilder clientBuilder = HttpClientBuilder.create();
 			clientBuilder.disableAutomaticRetries();
+			clientBuilder.setContentDecoderRegistry(ContentDecoders.registry(decoded));
+			// seen before the client decodes the body and drops the header, once per exchange
+			clientBuilder.addResponseInterceptorFirst((received, entity, context) -> {
+				decoded.reset();
+				context.setAttribute(RECEIVED_CONTENT_ENCODING, entity != null ? entity.getContentEncoding() : null);
+			});
 			clientBuilder.setRedirectStrategy(new BackWardCompatibleRedirectStrategy());
 
             if (useSystemProperties) {
@@ -379,11 +659,36 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
                 httpRequestBase.setHeader(HttpHeaders.CONTENT_ENCODING, entity.getContentEncoding());
             }
 
+            compressBody(httpRequestBase);
+
             HttpClientContext context = HttpClientContext.create();
             httpclient = auth(clientBuilder, httpRequestBase, context);
 
-            ResponseContentSupplier response = executeRequest(httpclient, clientUtil, httpRequestBase, context);
-            processResponse(response);
+            if (isSegmented()) {
+                response = downloadSegments(httpclient, clientUtil, context);
+            }
+            if (response == null) {
+                response = isCoalescable() ? executeCoalesced(httpclient, clientUtil, httpRequestBase, context)
+                        : executeWithRetries(httpclient, clientUtil, httpRequestBase, context);
+            }
+            List<CloseableHttpResponse> partialResponses = new ArrayList<>();
+            try {
+                CloseableHttpClient client = httpclient;
+                ResponseContentSupplier received = response;
+                // the offsets of a decoded body are not those of the ranges the server would send
+                boolean resumable = !isEncoded(context);
+                processResponse(response, !resumable ? null
+                        : offset -> resume(client, clientUtil, context, received, offset, partialResponses));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                // nobody gets to read a spooled body of a failed request
+                response.deleteSpillFile();
+                throw e;
+            } finally {
+                for (CloseableHttpResponse partialResponse : partialResponses) {
+                    partialResponse.close();
+                }
+            }
+            logDecoded(response, decoded);
 
             responseHandle = this.responseHandle;
             if (responseHandle == ResponseHandle.LEAVE_OPEN) {
@@ -391,7 +696,13 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
             }
             return response;
         } finally {
+            // a response left open is read by the caller, beyond what the bulkhead can follow
+            releaseSlot();
             if (responseHandle != ResponseHandle.LEAVE_OPEN) {
+                // hand the connection back to the shared pool
+                if (response != null) {
+                    response.release();
+                }
                 if (httpclient != null) {
                     httpclient.close();
                 }
@@ -399,50 +710,156 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         }
     }
 
-    private void configureTimeoutAndSsl(HttpClientBuilder clientBuilder) throws NoSuchAlgorithmException, KeyManagementException {
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-
-        //Ignore SSL errors
-        if (ignoreSslErrors) {
-            SSLContext sc = SSLContext.getInstance("SSL");
-            sc.init(null, new TrustManager[]{new NoopTrustManager()}, new SecureRandom());
-            SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sc, NoopHostnameVerifier.INSTANCE);
-            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
-                    .register("https", sslsf)
-                    .register("http", new PlainConnectionSocketFactory())
-                    .build();
-            connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+    private void configureTimeoutAndSsl(HttpClientBuilder clientBuilder) {
+        clientBuilder.setDefaultRequestConfig(createRequestConfig());
+        if (authenticator instanceof CertificateAuthentication) {
+            // brings its own pool for the key material
+            return;
         }
 
+        // the pool outlives this request, closing the client must not shut it down
+        HttpClientRegistry.Key key = new HttpClientRegistry.Key(
+                ignoreSslErrors ? "insecure" : "default",
+                httpProxy != null ? httpProxy.toURI() : "",
+                Math.max(timeout, 0),
+                authenticator != null ? authenticator.getClass().getName() + ":" + authenticator.getKeyName() : "");
+        clientBuilder.setConnectionManager(HttpClientRegistry.connectionManager(key, this::createConnectionManager));
+        clientBuilder.setConnectionManagerShared(true);
+    }
+
+    private RequestConfig createRequestConfig() {
         //timeout
         if (timeout > 0) {
             int t = timeout * 1000;
-            RequestConfig config = RequestConfig.custom()
+            return RequestConfig.custom()
                     .setResponseTimeout(t, TimeUnit.MILLISECONDS)
                     .setConnectionRequestTimeout(t, TimeUnit.MILLISECONDS)
                     .build();
-            clientBuilder.setDefaultRequestConfig(config);
-
-            ConnectionConfig connectionConfig = ConnectionConfig.custom()
-                    .setConnectTimeout(t, TimeUnit.MILLISECONDS)
-                    .build();
-            connectionManager.setDefaultConnectionConfig(connectionConfig);
-        } else {
-            // timeout is 0 or not provided, meaning "no timeout" per documentation
-            // Explicitly set to DISABLED to prevent httpclient5 from using its 5-minute default
-            RequestConfig config = RequestConfig.custom()
+        }
+        // timeout is 0 or not provided, meaning "no timeout" per documentation
+        // Explicitly set to DISABLED to prevent httpclient5 from using its 5-minute default
+        return RequestConfig.custom()
                 .setResponseTimeout(org.apache.hc.core5.util.Timeout.DISABLED)
                 .setConnectionRequestTimeout(org.apache.hc.core5.util.Timeout.DISABLED)
                 .build();
-            clientBuilder.setDefaultRequestConfig(config);
+    }
 
-            ConnectionConfig connectionConfig = ConnectionConfig.custom()
-                .setConnectTimeout(org.apache.hc.core5.util.Timeout.DISABLED)
-                .build();
-            connectionManager.setDefaultConnectionConfig(connectionConfig);
+    private ConnectionConfig createConnectionConfig() {
+        ConnectionConfig.Builder connectionConfig = ConnectionConfig.custom()
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2));
+        if (timeout > 0) {
+            connectionConfig.setConnectTimeout(timeout * 1000L, TimeUnit.MILLISECONDS);
+        } else {
+            connectionConfig.setConnectTimeout(org.apache.hc.core5.util.Timeout.DISABLED);
+        }
+        return connectionConfig.build();
+    }
+
+    private PoolingHttpClientConnectionManager createConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(SslContextCache.socketFactoryRegistry(ignoreSslErrors));
+        connectionManager.setDefaultConnectionConfig(createConnectionConfig());
+        return connectionManager;
+    }
+
+    private CloseableHttpAsyncClient asyncClient() {
+        // per request state lives in the context, so only what the client itself is built from goes in the key
+        HttpClientRegistry.Key key = new HttpClientRegistry.Key(
+                (ignoreSslErrors ? "insecure" : "default") + (useSystemProperties ? "+system" : "") + ":async:" + httpVersion,
+                httpProxy != null ? httpProxy.toURI() : "",
+                Math.max(timeout, 0),
+                "");
+        return HttpClientRegistry.asyncClient(key, this::createAsyncConnectionManager, connectionManager -> {
+            HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setRedirectStrategy(new BackWardCompatibleRedirectStrategy())
+                    .disableAutomaticRetries();
+            if (useSystemProperties) {
+                clientBuilder.useSystemProperties();
+            }
+            if (httpProxy != null) {
+                clientBuilder.setProxy(httpProxy);
+            }
+            return clientBuilder.build();
+        });
+    }
+
+    private PoolingAsyncClientConnectionManager createAsyncConnectionManager() {
+        // HTTP/2 is only offered through ALPN, plain connections and servers without h2 keep using HTTP/1.1
+        PoolingAsyncClientConnectionManagerBuilder builder = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setDefaultConnectionConfig(createConnectionConfig())
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(httpVersion == HttpVersion.HTTP_2 ?
+                                HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                        .build())
+                .setTlsStrategy(SslContextCache.tlsStrategy(ignoreSslErrors, useSystemProperties));
+        return builder.build();
+    }
+
+    private SimpleHttpRequest createAsyncRequest() {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.create(httpMode.name()).setUri(url);
+        ContentType contentType = null;
+        for (HttpRequestNameValuePair header : headers) {
+            builder.addHeader(header.getName(), header.getValue());
+            if (contentType == null && HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getName())) {
+                contentType = ContentType.parse(header.getValue());
+            }
         }
+        // same rules as HttpClientUtil.createRequestBase for the classic client
+        if (body != null && !body.isEmpty()
+                && httpMode != HttpMode.HEAD && httpMode != HttpMode.OPTIONS && httpMode != HttpMode.MKCOL) {
+            byte[] bytes = body.getBytes(ContentType.getCharset(contentType, StandardCharsets.ISO_8859_1));
+            if (isCompressed(bytes.length, builder.getFirstHeader(HttpHeaders.CONTENT_ENCODING))) {
+                try {
+                    bytes = CompressingEntity.compress(bytes, compressRequest);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                builder.setHeader(HttpHeaders.CONTENT_ENCODING, compressRequest);
+            }
+            builder.setBody(bytes, contentType);
+        }
+        return builder.build();
+    }
 
-        clientBuilder.setConnectionManager(connectionManager);
+    /**
+     * Compresses the body of {@code request} as asked with {@link #compressRequest}, which is
+     * streamed while it is sent.
+     */
+    private void compressBody(HttpUriRequestBase request) {
+        HttpEntity entity = request.getEntity();
+        if (entity == null || !isCompressed(entity.getContentLength(), request.getFirstHeader(HttpHeaders.CONTENT_ENCODING))) {
+            return;
+        }
+        CompressingEntity compressed = new CompressingEntity(entity, compressRequest);
+        request.setEntity(compressed);
+        request.setHeader(HttpHeaders.CONTENT_ENCODING, compressed.getContentEncoding());
+        logger().println("Compressing request body with " + compressRequest);
+    }
+
+    /**
+     * Whether a body of {@code length} bytes, or of unknown length when negative, gets compressed.
+     * Bodies already encoded by the caller, empty ones and the ones below the threshold are sent as is.
+     */
+    private boolean isCompressed(long length, Header contentEncoding) {
+        if (compressRequest.isEmpty() || length == 0 || length > 0 && length < compressRequestThreshold) {
+            return false;
+        }
+        return contentEncoding == null || contentEncoding.getValue() == null || contentEncoding.getValue().isBlank();
+    }
+
+    private void authAsync(HttpClientContext context, HttpHost target) {
+        if (authenticator instanceof CredentialBasicAuthentication credentialBasicAuthentication) {
+            logger().println("Using authentication: " + authenticator.getKeyName());
+            if (proxyCredentials != null) {
+                logger().println("Using proxy authentication: " + proxyCredentials.getId());
+                credentialBasicAuthentication.addCredentials(httpProxy, proxyCredentials);
+            }
+            credentialBasicAuthentication.prepare(context, target);
+        } else if (proxyCredentials != null) {
+            logger().println("Using proxy authentication: " + proxyCredentials.getId());
+            new CredentialBasicAuthentication(proxyCredentials).prepare(context, httpProxy);
+        }
     }
 
     private CloseableHttpClient auth(
@@ -467,9 +884,189 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         return authenticator.authenticate(clientBuilder, context, httpRequestBase, logger());
     }
 
+    /**
+     * Whether identical requests may share the response of this one. Only requests without a body or
+     * side effects qualify, and responses saved to a file are streamed rather than kept for others.
+     */
+    private boolean isCoalescable() {
+        return coalesce && (httpMode == HttpMode.GET || httpMode == HttpMode.HEAD)
+                && (body == null || body.isEmpty()) && outputFile == null;
+    }
+
+    /**
+     * Shares one exchange between the identical requests of a build in flight in this JVM: the first
+     * one sends the request, the others wait for its response and get their own copy of it. When the
+     * first one fails, or its body is too large to be shared, the others send their own requests.
+     * Requests are identical when they send the same thing the same way, down to the credentials.
+     */
+    private ResponseContentSupplier executeCoalesced(
+            CloseableHttpClient httpclient, HttpClientUtil clientUtil, HttpUriRequestBase httpRequestBase,
+            HttpClientContext context) throws IOException, InterruptedException {
+        String key = ResponseCache.key(httpMode + " " + url, headers, coalesceScope + " " + fingerprint());
+        CompletableFuture<ResponseContentSupplier.Shared> flight = new CompletableFuture<>();
+        CompletableFuture<ResponseContentSupplier.Shared> leader = IN_FLIGHT.putIfAbsent(key, flight);
+        if (leader != null) {
+            ResponseContentSupplier.Shared shared;
+            try {
+                shared = leader.get();
+            } catch (ExecutionException e) {
+                shared = null;
+            }
+            if (shared != null) {
+                logger().println("Response shared with an identical request in flight");
+                return new ResponseContentSupplier(responseHandle, shared);
+            }
+            return executeWithRetries(httpclient, clientUtil, httpRequestBase, context);
+        }
+
+        ResponseContentSupplier.Shared shared = null;
+        try {
+            ResponseContentSupplier response = executeWithRetries(httpclient, clientUtil, httpRequestBase, context);
+            try {
+                shared = response.share();
+            } catch (IOException e) {
+                response.release();
+                throw e;
+            }
+            return response;
+        } finally {
+            IN_FLIGHT.remove(key, flight);
+            flight.complete(shared);
+        }
+    }
+
+    /**
+     * A digest of what decides how the request goes on the wire besides its URL and headers: the
+     * credentials themselves rather than their id, which may stand for other secrets in another folder,
+     * the proxy and its credentials, and the TLS and timeout settings.
+     */
+    private String fingerprint() {
+        if (fingerprint == null) {
+            fingerprint = RequestFingerprint.of(
+                    authenticator != null ? authenticator.getClass().getName() : "", authenticator,
+                    httpProxy != null ? httpProxy.toURI() : "", proxyCredentials,
+                    ignoreSslErrors, useSystemProperties, useNtlm, timeout, httpVersion);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Sends the request until it gets a response {@link #retry} does not ask to retry, or runs out of
+     * attempts. The last response is returned as is, and validated by the caller like any other.
+     */
+    private ResponseContentSupplier executeWithRetries(
+            CloseableHttpClient httpclient, HttpClientUtil clientUtil, HttpUriRequestBase httpRequestBase,
+            HttpClientContext context) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            boolean retrying = retry != null && attempt < retry.getMaxAttempts();
+            ResponseContentSupplier response;
+            String reason;
+            String retryAfter = null;
+            try {
+                response = executeThroughBreaker(httpclient, clientUtil, httpRequestBase, context, retrying);
+                if (!retrying || !retry.isRetryable(response.getStatus(), httpMode)) {
+                    return response;
+                }
+                reason = "status code " + response.getStatus();
+                List<String> retryAfterValues = response.getHeaders().get(HttpHeaders.RETRY_AFTER);
+                if (retryAfterValues != null && !retryAfterValues.isEmpty()) {
+                    retryAfter = retryAfterValues.get(0);
+                }
+                response.release();
+                response.deleteSpillFile();
+            } catch (IOException e) {
+                if (!retrying || !retry.isRetryable(e, httpMode)) {
+                    throw e;
+                }
+                reason = e.toString();
+            }
+            long delay = retry.delayMillis(attempt, retryAfter);
+            logger().println("Attempt " + attempt + " of " + retry.getMaxAttempts() + " failed with " + reason
+                    + ", retrying in " + delay + " ms");
+            // other requests to the host go ahead while this one waits
+            releaseSlot();
+            Thread.sleep(delay);
+            acquireSlot();
+        }
+    }
+
+    private void acquireSlot() throws InterruptedException, AbortException {
+        if (concurrencyLimit != null) {
+            slot = Bulkhead.of(concurrencyLimit).acquire(concurrencyLimit.getMaxWaitSeconds(), logger());
+        }
+    }
+
+    private void releaseSlot() {
+        if (slot != null) {
+            slot.close();
+            slot = null;
+        }
+    }
+
+    private ResponseContentSupplier executeThroughBreaker(
+            CloseableHttpClient httpclient, HttpClientUtil clientUtil, HttpUriRequestBase httpRequestBase,
+            HttpClientContext context, boolean retrying) throws IOException, InterruptedException {
+        CircuitBreaker.Permit permit;
+        try {
+            permit = circuitBreaker(httpRequestBase.getUri());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (permit == null) {
+            return executeRequest(httpclient, clientUtil, httpRequestBase, context, retrying);
+        }
+        long start = System.nanoTime();
+        try {
+            ResponseContentSupplier response = executeRequest(httpclient, clientUtil, httpRequestBase, context, retrying);
+            permit.record(circuitBreaker, isBreakerFailure(response.getStatus()), elapsedMillis(start));
+            return response;
+        } catch (IOException e) {
+            permit.record(circuitBreaker, true, elapsedMillis(start));
+            throw e;
+        } finally {
+            // without an outcome, once recorded this does nothing
+            permit.release();
+        }
+    }
+
+    /**
+     * The permit of a call through the breaker of the host of {@code uri}, or {@code null} when
+     * circuit breakers are disabled.
+     */
+    private CircuitBreaker.Permit circuitBreaker(URI uri) throws CircuitBreaker.OpenException {
+        if (circuitBreaker == null) {
+            return null;
+        }
+        return CircuitBreaker.of(URIUtils.extractHost(uri).toURI()).acquire();
+    }
+
+    /**
+     * Server errors and timeouts, which {@link #executeRequest} reports as 408, count against the circuit.
+     */
+    private static boolean isBreakerFailure(int status) {
+        return status >= 500 || status == HttpStatus.SC_REQUEST_TIMEOUT;
+    }
+
+    /**
+     * Waits for the rate limits of the request, which apply to every request sent on its behalf.
+     */
+    private void throttle() throws IOException, InterruptedException {
+        if (throttle == null) {
+            return;
+        }
+        long waited = RateLimiter.acquire(throttle);
+        if (waited > 0) {
+            logger().println("Rate limited, waited " + waited + " ms before sending the request");
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
     private ResponseContentSupplier executeRequest(
             CloseableHttpClient httpclient, HttpClientUtil clientUtil, HttpUriRequestBase httpRequestBase,
-            HttpClientContext context) throws IOException {
+            HttpClientContext context, boolean retrying) throws IOException, InterruptedException {
         ResponseContentSupplier responseContentSupplier;
 /*
         // TODO: pick interesting fields/getters from these classes:
@@ -480,14 +1077,51 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
             " HttpContext=" + context.toString()
             );
 */
+        String cacheKey = null;
+        ResponseCache.Entry cached = null;
+        if (useCache && httpMode == HttpMode.GET && !ResponseCache.isBypassed(headers)) {
+            cacheKey = ResponseCache.key(url, headers, fingerprint());
+            cached = ResponseCache.get(cacheKey);
+            if (cached != null && cached.isFresh() && !ResponseCache.isRevalidationRequired(headers)) {
+                logger().println("Response served from cache");
+                return new ResponseContentSupplier(responseHandle, cached);
+            }
+            if (cached != null && cached.hasValidator()) {
+                if (cached.getETag() != null) {
+                    httpRequestBase.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+                }
+                if (cached.getLastModified() != null) {
+                    httpRequestBase.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+                }
+            } else {
+                cached = null;
+            }
+        }
+
+        throttle();
         try {
             final HttpResponse response = clientUtil.execute(httpclient, context, httpRequestBase, logger());
+            if (cacheKey != null) {
+                CloseableHttpResponse closeableResponse = (CloseableHttpResponse) response;
+                if (cached != null && response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    EntityUtils.consume(closeableResponse.getEntity());
+                    closeableResponse.close();
+                    ResponseCache.Entry revalidated = cached.revalidated(response);
+                    ResponseCache.put(cacheKey, revalidated);
+                    logger().println("Response revalidated, served from cache");
+                    return new ResponseContentSupplier(responseHandle, revalidated);
+                }
+                ResponseCache.store(cacheKey, closeableResponse, authenticator != null || ResponseCache.isAuthorized(headers));
+            }
             // The HttpEntity is consumed by the ResponseContentSupplier
-            responseContentSupplier = new ResponseContentSupplier(responseHandle, (CloseableHttpResponse) response);
+            responseContentSupplier = new ResponseContentSupplier(responseHandle, (CloseableHttpResponse) response, validResponseContent);
         } catch (UnknownHostException uhe) {
             logger().println("Treating UnknownHostException(" + uhe.getMessage() + ") as 404 Not Found");
             responseContentSupplier = new ResponseContentSupplier("UnknownHostException as 404 Not Found", 404);
         } catch (SocketTimeoutException | ConnectException ce) {
+            if (retrying && retry.isRetryable(ce, httpMode)) {
+                throw ce;
+            }
             logger().println("Treating " + ce.getClass() + "(" + ce.getMessage() + ") as 408 Request Timeout");
             responseContentSupplier = new ResponseContentSupplier(ce.getClass() + "(" + ce.getMessage() + ") as 408 Request Timeout", 408);
         }
@@ -506,7 +1140,82 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         throw new AbortException("Fail: Status code " + response.getStatus() + " is not in the accepted range: " + validResponseCodes + " while calling " + url);
     }
 
-    private void processResponse(ResponseContentSupplier response) throws IOException, InterruptedException {
+    /**
+     * Asks the server for the rest of an interrupted download, returning the remaining body or
+     * {@code null} when it cannot be resumed. The server must have advertised byte ranges along with
+     * a strong validator, which goes in {@code If-Range} so a changed resource is never spliced. The
+     * rest is asked for in the identity encoding, as the download it continues was not encoded.
+     */
+    private InputStream resume(CloseableHttpClient httpclient, HttpClientUtil clientUtil, HttpClientContext context,
+                               ResponseContentSupplier response, long offset,
+                               List<CloseableHttpResponse> partialResponses) throws IOException, InterruptedException {
+        String validator = rangeValidator(response);
+        if (httpMode != HttpMode.GET || validator == null) {
+            return null;
+        }
+        HttpUriRequestBase request = clientUtil.createRequestBase(new RequestAction(new URL(url), httpMode, body, null, headers));
+        request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+        request.setHeader(HttpHeaders.IF_RANGE, validator);
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        throttle();
+        CloseableHttpResponse partialResponse = (CloseableHttpResponse) clientUtil.execute(httpclient, context, request, logger());
+        partialResponses.add(partialResponse);
+
+        Header contentRange = partialResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        if (partialResponse.getCode() != HttpStatus.SC_PARTIAL_CONTENT || partialResponse.getEntity() == null
+                || isEncoded(context)
+                || contentRange == null || !contentRange.getValue().startsWith("bytes " + offset + "-")) {
+            logger().println("Server did not resume the download at byte " + offset);
+            return null;
+        }
+        return partialResponse.getEntity().getContent();
+    }
+
+    private static String rangeValidator(ResponseContentSupplier response) {
+        List<String> acceptRanges = response.getHeaders().get(HttpHeaders.ACCEPT_RANGES);
+        if (acceptRanges == null || acceptRanges.stream().noneMatch(value -> value.contains("bytes"))) {
+            return null;
+        }
+        List<String> eTag = response.getHeaders().get(HttpHeaders.ETAG);
+        if (eTag != null && !eTag.isEmpty() && !eTag.get(0).startsWith("W/")) {
+            return eTag.get(0);
+        }
+        List<String> lastModified = response.getHeaders().get(HttpHeaders.LAST_MODIFIED);
+        return lastModified != null && !lastModified.isEmpty() ? lastModified.get(0) : null;
+    }
+
+    /**
+     * Copies the body to {@code writer}, resuming it with range requests when the connection drops.
+     * Only consecutive failures without progress count toward {@link #MAX_RESUMES}.
+     */
+    private void copyResuming(InputStream in, OutputFileWriter writer, ContentMatcher matcher,
+                              Resumer resumer) throws IOException, InterruptedException {
+        int attempts = 0;
+        long progress = 0;
+        while (true) {
+            try {
+                writer.copy(in);
+                return;
+            } catch (IOException e) {
+                long offset = writer.position();
+                if (offset > progress) {
+                    attempts = 0;
+                    progress = offset;
+                }
+                if (resumer == null || offset == 0 || ++attempts > MAX_RESUMES) {
+                    throw e;
+                }
+                logger().println("Download interrupted after " + offset + " bytes (" + e + "), resuming");
+                InputStream rest = resumer.resume(offset);
+                if (rest == null) {
+                    throw e;
+                }
+                in = matcher != null ? matcher.wrap(rest) : rest;
+            }
+        }
+    }
+
+    private void processResponse(ResponseContentSupplier response, Resumer resumer) throws IOException, InterruptedException {
         //logs
         if (consoleLogResponseBody) {
             logger().println("Response: \n" + response.getContent());
@@ -515,64 +1224,268 @@ public class HttpRequestExecution extends MasterToSlaveCallable<ResponseContentS
         //validate status code
         responseCodeIsValid(response);
 
-        //validate content
+        //validate content, matching the body as it is read unless it was matched or is in memory already
+        ContentMatcher matcher = null;
         if (!validResponseContent.isEmpty()) {
-            if (!response.getContent().contains(validResponseContent)) {
-                throw new AbortException("Fail: Response doesn't contain expected content '" + validResponseContent + "'" + " while calling " + url);
+            if (response.getContentMatcher() != null) {
+                if (!response.getContentMatcher().isFound()) {
+                    throw invalidContent();
+                }
+            } else if (response.isContentLoaded()) {
+                if (!response.getContent().contains(validResponseContent)) {
+                    throw invalidContent();
+                }
+            } else {
+                matcher = response.contentMatcher(validResponseContent);
             }
         }
 
-        //save file
-        if (outputFile == null) {
+        if (outputFile == null && matcher == null) {
             return;
         }
-        logger().println("Saving response body to " + outputFile);
-
         InputStream in = response.getContentStream();
         if (in == null) {
+            if (matcher != null) {
+                throw invalidContent();
+            }
             return;
         }
-        OutputStream out = null;
-        try {
-            out = outputFile.write();
-            IOUtils.copy(in, out);
-        } finally {
-            if (out != null) {
-                out.close();
+        if (matcher != null) {
+            in = matcher.wrap(in);
+        }
+
+        //save file
+        if (outputFile == null) {
+            // nothing to keep, stop reading as soon as the content is found
+            byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+            while (!matcher.isFound() && in.read(buffer) >= 0) {
+                // the matcher sees every byte read
+            }
+        } else if (!outputFile.isRemote()) {
+            logger().println("Saving response body to " + outputFile);
+            try (InputStream body = in;
+                 OutputFileWriter writer = OutputFileWriter.open(Paths.get(outputFile.getRemote()))) {
+                copyResuming(body, writer, matcher, resumer);
+                if (matcher != null && !matcher.isFound()) {
+                    throw invalidContent();
+                }
+                checkDigest(writer::digest);
+                writer.commit();
+            }
+        } else {
+            logger().println("Saving response body to " + outputFile);
+            OutputStream out = null;
+            try {
+                out = outputFile.write();
+                IOUtils.copy(in, out);
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+                in.close();
+            }
+            if (matcher != null && !matcher.isFound()) {
+                outputFile.delete();
+            } else {
+                try {
+                    checkDigest(digest -> {
+                        try (InputStream written = outputFile.read()) {
+                            IOUtils.copy(new DigestInputStream(written, digest), OutputStream.nullOutputStream());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException(e);
+                        }
+                    });
+                } catch (AbortException e) {
+                    outputFile.delete();
+                    throw e;
+                }
             }
-            in.close();
+        }
+
+        if (matcher != null && !matcher.isFound()) {
+            throw invalidContent();
         }
     }
 
-    private static class NoopTrustManager extends X509ExtendedTrustManager {
+    /**
+     * Whether the body goes to {@link #outputFile} over several ranged requests, see {@link #downloadSegments}.
+     * Content validation, logging or returning the body, as {@link ResponseHandle#STRING} does, need it
+     * as a single stream.
+     */
+    private boolean isSegmented() {
+        return segments > 1 && httpMode == HttpMode.GET && (body == null || body.isEmpty())
+                && outputFile != null && !outputFile.isRemote()
+                && validResponseContent.isEmpty() && !consoleLogResponseBody
+                && responseHandle == ResponseHandle.NONE && !useCache && !useNtlm;
+    }
 
-        @Override
-        public void checkClientTrusted(X509Certificate[] arg0, String arg1) {
+    /**
+     * Downloads the body into {@link #outputFile} with concurrent ranged requests, each writing its
+     * segment at its offset of the file. The server is asked for the length and validator of the body
+     * with a {@code HEAD} request first, returning {@code null} when it cannot serve ranges so the
+     * body is downloaded as a single stream instead. Ranges are asked for in the identity encoding, as
+     * the ranges of an encoded body count encoded bytes, and the download goes on over a single stream
+     * when the server encodes the body anyway.
+     */
+    private ResponseContentSupplier downloadSegments(CloseableHttpClient httpclient, HttpClientUtil clientUtil,
+                                                     HttpClientContext context) throws IOException, InterruptedException {
+        HttpUriRequestBase head = clientUtil.createRequestBase(new RequestAction(new URL(url), HttpMode.HEAD, null, null, headers));
+        head.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        throttle();
+        CloseableHttpResponse headResponse = (CloseableHttpResponse) clientUtil.execute(httpclient, context, head, logger());
+        ResponseContentSupplier response = new ResponseContentSupplier(ResponseHandle.NONE, headResponse);
+        Header contentLength = headResponse.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+        long length = contentLength != null ? parseLength(contentLength.getValue()) : -1;
+        String validator = rangeValidator(response);
+        int count = (int) Math.min(segments, length / SystemProperties.getLong(MIN_SEGMENT_BYTES_PROPERTY, 1024L * 1024));
+        if (headResponse.getCode() != HttpStatus.SC_OK || validator == null || count < 2 || isEncoded(context)
+                || headResponse.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            logger().println("Downloading over a single connection, the server does not offer ranges for this body");
+            response.release();
+            return null;
         }
 
-        @Override
-        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        logger().println("Saving response body to " + outputFile + " in " + count + " segments");
+        long segmentLength = (length + count - 1) / count;
+        ExecutorService executor = Executors.newFixedThreadPool(count,
+                new NamingThreadFactory(Executors.defaultThreadFactory(), "httpRequest segments"));
+        try (OutputFileWriter writer = OutputFileWriter.open(Paths.get(outputFile.getRemote()))) {
+            List<Future<?>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long from = i * segmentLength;
+                long to = Math.min(length, from + segmentLength) - 1;
+                futures.add(executor.submit(() -> {
+                    downloadSegment(httpclient, clientUtil, context, validator, writer, from, to);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof EncodedSegmentException) {
+                        logger().println("Downloading over a single connection, the server encodes the segments");
+                        response.release();
+                        return null;
+                    }
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            checkDigest(writer::digest);
+            writer.commit();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            response.release();
+            throw e;
+        } finally {
+            executor.shutdownNow();
         }
+        return response;
+    }
 
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return new X509Certificate[0];
+    private void downloadSegment(CloseableHttpClient httpclient, HttpClientUtil clientUtil, HttpClientContext context,
+                                 String validator, OutputFileWriter writer, long from, long to) throws IOException, InterruptedException {
+        HttpUriRequestBase request = clientUtil.createRequestBase(new RequestAction(new URL(url), httpMode, null, null, headers));
+        request.setHeader(HttpHeaders.RANGE, "bytes=" + from + "-" + to);
+        request.setHeader(HttpHeaders.IF_RANGE, validator);
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        // contexts are not thread safe, only share what authentication put into them
+        HttpClientContext segmentContext = HttpClientContext.create();
+        segmentContext.setCredentialsProvider(context.getCredentialsProvider());
+        segmentContext.setAuthCache(context.getAuthCache());
+        segmentContext.setCookieStore(context.getCookieStore());
+        throttle();
+        try (CloseableHttpResponse segment = (CloseableHttpResponse) clientUtil.execute(httpclient, segmentContext, request, logger())) {
+            if (isEncoded(segmentContext)) {
+                throw new EncodedSegmentException();
+            }
+            Header contentRange = segment.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+            if (segment.getCode() != HttpStatus.SC_PARTIAL_CONTENT || segment.getEntity() == null
+                    || contentRange == null || !contentRange.getValue().startsWith("bytes " + from + "-" + to + "/")) {
+                throw new IOException("Server did not return bytes " + from + "-" + to + " of " + url
+                        + ", status " + segment.getCode());
+            }
+            try (InputStream in = segment.getEntity().getContent()) {
+                long written = writer.write(from, in);
+                if (written != to - from + 1) {
+                    throw new IOException("Segment " + from + "-" + to + " of " + url + " ended after " + written + " bytes");
+                }
+            }
         }
+    }
 
-        @Override
-        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
-        }
+    /**
+     * Whether the last response received in {@code context} had a content-encoded body, whether or not
+     * the client decoded it.
+     */
+    private static boolean isEncoded(HttpContext context) {
+        Object contentEncoding = context.getAttribute(RECEIVED_CONTENT_ENCODING);
+        return contentEncoding != null && !contentEncoding.toString().trim().isEmpty()
+                && !contentEncoding.toString().trim().equalsIgnoreCase("identity");
+    }
 
-        @Override
-        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
-        }
+    /**
+     * A segment came content-encoded, its bytes do not line up with the ranges of the body.
+     */
+    private static final class EncodedSegmentException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
 
-        @Override
-        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+    private static long parseLength(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
+    }
 
-        @Override
-        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+    /**
+     * Fails the request when {@link #outputFileDigest} is set and does not match what {@code source} feeds
+     * to the digest.
+     */
+    private void checkDigest(DigestSource source) throws IOException {
+        if (outputFileDigest.isEmpty()) {
+            return;
+        }
+        int separator = outputFileDigest.indexOf(':');
+        if (separator < 0) {
+            throw new AbortException("Fail: outputFileDigest must be in the form algorithm:hex, got '" + outputFileDigest + "'");
+        }
+        String algorithm = outputFileDigest.substring(0, separator).trim();
+        String expected = outputFileDigest.substring(separator + 1).trim();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AbortException("Fail: unknown digest algorithm '" + algorithm + "'");
+        }
+        source.feed(digest);
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equalsIgnoreCase(expected)) {
+            throw new AbortException("Fail: " + algorithm + " digest of the response is " + actual
+                    + ", expected " + expected + " while calling " + url);
         }
+        logger().println("Success: " + algorithm + " digest of the response matches");
+    }
+
+    @FunctionalInterface
+    private interface DigestSource {
+        void feed(MessageDigest digest) throws IOException;
+    }
+
+    /**
+     * Opens the rest of a response body from the given offset, or returns {@code null}.
+     */
+    @FunctionalInterface
+    private interface Resumer {
+        InputStream resume(long offset) throws IOException, InterruptedException;
+    }
+
+    private AbortException invalidContent() {
+        return new AbortException("Fail: Response doesn't contain expected content '" + validResponseContent + "'" + " while calling " + url);
     }
 }
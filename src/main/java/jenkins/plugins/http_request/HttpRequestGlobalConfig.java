@@ -1,6 +1,8 @@
 package jenkins.plugins.http_request;
 
 import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,7 +22,12 @@ import jenkins.model.Jenkins;
 import jenkins.plugins.http_request.auth.Authenticator;
 import jenkins.plugins.http_request.auth.BasicDigestAuthentication;
 import jenkins.plugins.http_request.auth.FormAuthentication;
+import jenkins.plugins.http_request.util.Bulkhead;
+import jenkins.plugins.http_request.util.CircuitBreaker;
+import jenkins.plugins.http_request.util.CircuitBreakerSettings;
+import jenkins.plugins.http_request.util.ConcurrencyLimit;
 import jenkins.plugins.http_request.util.HttpRequestNameValuePair;
+import jenkins.plugins.http_request.util.RateLimit;
 
 /**
  * @author Martin d'Anjou
@@ -34,6 +41,9 @@ public class HttpRequestGlobalConfig extends GlobalConfiguration {
     @Deprecated
     private transient List<BasicDigestAuthentication> basicDigestAuthentications = new ArrayList<>();
     private List<FormAuthentication> formAuthentications = new ArrayList<>();
+    private CircuitBreakerSettings circuitBreaker;
+    private List<ConcurrencyLimit> concurrencyLimits = new ArrayList<>();
+    private List<RateLimit> rateLimits = new ArrayList<>();
 
     private static final XStream2 XSTREAM2 = new XStream2();
 
@@ -56,6 +66,10 @@ public class HttpRequestGlobalConfig extends GlobalConfiguration {
 
     @Override
     public boolean configure(StaplerRequest2 req, JSONObject json) {
+        // optional properties are left out of the form when unchecked
+        circuitBreaker = null;
+        concurrencyLimits = new ArrayList<>();
+        rateLimits = new ArrayList<>();
         req.bindJSON(this, json);
         save();
         return true;
@@ -108,6 +122,84 @@ public class HttpRequestGlobalConfig extends GlobalConfiguration {
         this.formAuthentications = formAuthentications;
     }
 
+    /**
+     * The thresholds of the per host circuit breakers, or {@code null} when they are disabled.
+     */
+    public CircuitBreakerSettings getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreakerSettings circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * The circuit breakers of the controller, agents keep their own.
+     */
+    public List<CircuitBreaker> getCircuitBreakers() {
+        return CircuitBreaker.all();
+    }
+
+    public List<ConcurrencyLimit> getConcurrencyLimits() {
+        return concurrencyLimits;
+    }
+
+    public void setConcurrencyLimits(List<ConcurrencyLimit> concurrencyLimits) {
+        this.concurrencyLimits = concurrencyLimits != null ? concurrencyLimits : new ArrayList<>();
+    }
+
+    /**
+     * The first concurrency limit whose host pattern matches {@code url}, or {@code null}.
+     */
+    public ConcurrencyLimit getConcurrencyLimit(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        for (ConcurrencyLimit limit : concurrencyLimits) {
+            if (limit.matches(uri.getHost(), uri.getPort())) {
+                return limit;
+            }
+        }
+        return null;
+    }
+
+    public List<RateLimit> getRateLimits() {
+        return rateLimits;
+    }
+
+    public void setRateLimits(List<RateLimit> rateLimits) {
+        this.rateLimits = rateLimits != null ? rateLimits : new ArrayList<>();
+    }
+
+    /**
+     * The rate limits applying to a request to {@code url} with {@code authentication}.
+     */
+    public List<RateLimit> getRateLimits(String url, String authentication) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return List.of();
+        }
+        List<RateLimit> limits = new ArrayList<>();
+        for (RateLimit limit : rateLimits) {
+            if (limit.matches(uri.getHost(), uri.getPort(), authentication)) {
+                limits.add(limit);
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * The bulkheads of the controller, agents keep their own.
+     */
+    public List<Bulkhead> getBulkheads() {
+        return Bulkhead.all();
+    }
+
     public List<Authenticator> getAuthentications() {
         return new ArrayList<>(formAuthentications);
     }
@@ -125,6 +217,12 @@ public class HttpRequestGlobalConfig extends GlobalConfiguration {
         if (this.basicDigestAuthentications != null) {
             this.basicDigestAuthentications = new ArrayList<>();
         }
+        if (this.concurrencyLimits == null) {
+            this.concurrencyLimits = new ArrayList<>();
+        }
+        if (this.rateLimits == null) {
+            this.rateLimits = new ArrayList<>();
+        }
         return this;
     }
 }
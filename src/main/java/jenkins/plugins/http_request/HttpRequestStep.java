@@ -8,9 +8,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.HttpHeaders;
 import org.jenkinsci.plugins.workflow.steps.Step;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
@@ -22,6 +25,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -34,6 +38,7 @@ import hudson.util.ListBoxModel;
 
 import jenkins.plugins.http_request.util.HttpRequestFormDataPart;
 import jenkins.plugins.http_request.util.HttpRequestNameValuePair;
+import jenkins.plugins.http_request.util.RetryPolicy;
 
 /**
  * @author Martin d'Anjou
@@ -43,6 +48,7 @@ public final class HttpRequestStep extends Step {
     private final @NonNull String url;
     private boolean ignoreSslErrors = DescriptorImpl.ignoreSslErrors;
     private HttpMode httpMode                 = DescriptorImpl.httpMode;
+    private HttpVersion httpVersion           = DescriptorImpl.httpVersion;
     private String httpProxy                  = DescriptorImpl.httpProxy;
     private String proxyAuthentication        = DescriptorImpl.proxyAuthentication;
     private String validResponseCodes         = DescriptorImpl.validResponseCodes;
@@ -62,7 +68,17 @@ public final class HttpRequestStep extends Step {
     private List<HttpRequestNameValuePair> customHeaders = DescriptorImpl.customHeaders;
     private List<HttpRequestFormDataPart> formData = DescriptorImpl.formData;
     private String outputFile = DescriptorImpl.outputFile;
+    private int segments = DescriptorImpl.segments;
+    private String outputFileDigest = DescriptorImpl.outputFileDigest;
     private ResponseHandle responseHandle = DescriptorImpl.responseHandle;
+    private boolean async                     = DescriptorImpl.async;
+    private boolean useCache                  = DescriptorImpl.useCache;
+    private boolean coalesce                  = DescriptorImpl.coalesce;
+    private String compressRequest            = DescriptorImpl.compressRequest;
+    private int compressRequestThreshold      = DescriptorImpl.compressRequestThreshold;
+    private String acceptEncoding             = DescriptorImpl.acceptEncoding;
+    private RetryPolicy retry                 = DescriptorImpl.retry;
+    private ExecuteOn executeOn               = DescriptorImpl.executeOn;
 
     @DataBoundConstructor
     public HttpRequestStep(@NonNull String url) {
@@ -92,6 +108,15 @@ public final class HttpRequestStep extends Step {
         return httpMode;
     }
 
+    @DataBoundSetter
+    public void setHttpVersion(HttpVersion httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
+    public HttpVersion getHttpVersion() {
+        return httpVersion;
+    }
+
     @DataBoundSetter
     public void setHttpProxy(String httpProxy) {
         this.httpProxy = httpProxy;
@@ -227,6 +252,24 @@ public final class HttpRequestStep extends Step {
         this.outputFile = outputFile;
     }
 
+    public int getSegments() {
+        return segments;
+    }
+
+    @DataBoundSetter
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public String getOutputFileDigest() {
+        return outputFileDigest;
+    }
+
+    @DataBoundSetter
+    public void setOutputFileDigest(String outputFileDigest) {
+        this.outputFileDigest = outputFileDigest;
+    }
+
     public ResponseHandle getResponseHandle() {
         return responseHandle;
     }
@@ -273,9 +316,97 @@ public final class HttpRequestStep extends Step {
         return useNtlm;
     }
 
+    public boolean isAsync() {
+        return async;
+    }
+
+    @DataBoundSetter
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public boolean isUseCache() {
+        return useCache;
+    }
+
+    @DataBoundSetter
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    @DataBoundSetter
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public String getCompressRequest() {
+        return compressRequest;
+    }
+
+    @DataBoundSetter
+    public void setCompressRequest(String compressRequest) {
+        this.compressRequest = compressRequest != null ? compressRequest.trim() : "";
+    }
+
+    public int getCompressRequestThreshold() {
+        return compressRequestThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCompressRequestThreshold(int compressRequestThreshold) {
+        this.compressRequestThreshold = compressRequestThreshold;
+    }
+
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    @DataBoundSetter
+    public void setAcceptEncoding(String acceptEncoding) {
+        this.acceptEncoding = acceptEncoding != null ? acceptEncoding.trim() : "";
+    }
+
+    public RetryPolicy getRetry() {
+        return retry;
+    }
+
+    @DataBoundSetter
+    public void setRetry(RetryPolicy retry) {
+        this.retry = retry;
+    }
+
+    public ExecuteOn getExecuteOn() {
+        return executeOn;
+    }
+
+    @DataBoundSetter
+    public void setExecuteOn(ExecuteOn executeOn) {
+        this.executeOn = executeOn != null ? executeOn : DescriptorImpl.executeOn;
+    }
+
+    /**
+     * Whether the request reads or writes files of the workspace.
+     */
+    boolean usesWorkspaceFiles() {
+        if (outputFile != null && !outputFile.trim().isEmpty()
+                || uploadFile != null && !uploadFile.trim().isEmpty()) {
+            return true;
+        }
+        for (HttpRequestFormDataPart part : formData) {
+            if (part.getUploadFile() != null && !part.getUploadFile().trim().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public StepExecution start(StepContext context) {
-        return new Execution(context, this);
+        return async ? new AsyncExecution(context, this) : new Execution(context, this);
     }
 
     @Override
@@ -291,6 +422,9 @@ public final class HttpRequestStep extends Step {
         if (acceptType != null && acceptType != MimeType.NOT_SET) {
             headers.add(new HttpRequestNameValuePair(HttpHeaders.ACCEPT, acceptType.getValue()));
         }
+        if (acceptEncoding != null && !acceptEncoding.isEmpty()) {
+            headers.add(new HttpRequestNameValuePair(HttpHeaders.ACCEPT_ENCODING, acceptEncoding));
+        }
         for (HttpRequestNameValuePair header : customHeaders) {
             String headerName = header.getName();
             String headerValue = header.getValue();
@@ -306,6 +440,7 @@ public final class HttpRequestStep extends Step {
     public static final class DescriptorImpl extends StepDescriptor {
         public static final boolean ignoreSslErrors = HttpRequest.DescriptorImpl.ignoreSslErrors;
         public static final HttpMode httpMode                  = HttpRequest.DescriptorImpl.httpMode;
+        public static final HttpVersion httpVersion            = HttpRequest.DescriptorImpl.httpVersion;
         public static final String   httpProxy                 = HttpRequest.DescriptorImpl.httpProxy;
         public static final String   proxyAuthentication       = HttpRequest.DescriptorImpl.proxyAuthentication;
         public static final String   validResponseCodes        = HttpRequest.DescriptorImpl.validResponseCodes;
@@ -325,7 +460,17 @@ public final class HttpRequestStep extends Step {
         public static final List <HttpRequestNameValuePair> customHeaders = Collections.emptyList();
         public static final List <HttpRequestFormDataPart> formData = Collections.emptyList();
         public static final String outputFile = "";
+        public static final int segments = HttpRequest.DescriptorImpl.segments;
+        public static final String outputFileDigest = HttpRequest.DescriptorImpl.outputFileDigest;
         public static final ResponseHandle responseHandle = ResponseHandle.STRING;
+        public static final boolean async = false;
+        public static final boolean  useCache                  = HttpRequest.DescriptorImpl.useCache;
+        public static final boolean  coalesce                  = HttpRequest.DescriptorImpl.coalesce;
+        public static final String   compressRequest           = HttpRequest.DescriptorImpl.compressRequest;
+        public static final int      compressRequestThreshold  = HttpRequest.DescriptorImpl.compressRequestThreshold;
+        public static final String   acceptEncoding            = HttpRequest.DescriptorImpl.acceptEncoding;
+        public static final RetryPolicy retry                  = HttpRequest.DescriptorImpl.retry;
+        public static final ExecuteOn executeOn                = ExecuteOn.AGENT;
 
         @Override
         public Set<? extends Class<?>> getRequiredContext() {
@@ -349,6 +494,18 @@ public final class HttpRequestStep extends Step {
             return HttpMode.getFillItems();
         }
 
+        public ListBoxModel doFillHttpVersionItems() {
+            return HttpVersion.getFillItems();
+        }
+
+        public ListBoxModel doFillCompressRequestItems() {
+            return HttpRequest.DescriptorImpl.fillCompressRequestItems();
+        }
+
+        public ListBoxModel doFillExecuteOnItems() {
+            return ExecuteOn.getFillItems();
+        }
+
         public ListBoxModel doFillAcceptTypeItems() {
             return MimeType.getContentTypeFillItems();
         }
@@ -379,6 +536,10 @@ public final class HttpRequestStep extends Step {
             return HttpRequest.DescriptorImpl.checkValidResponseCodes(value);
         }
 
+        public FormValidation doCheckSegments(@QueryParameter int value) {
+            return HttpRequest.DescriptorImpl.checkSegments(value);
+        }
+
     }
 
     public static final class Execution extends SynchronousNonBlockingStepExecution<ResponseContentSupplier> {
@@ -396,16 +557,37 @@ public final class HttpRequestStep extends Step {
                     step.getQuiet() ? TaskListener.NULL : Objects.requireNonNull(getContext().get(TaskListener.class)),
                     this);
 
+            ResponseContentSupplier response;
             Launcher launcher = getContext().get(Launcher.class);
-            if (launcher != null) {
+            if (launcher != null && runsOnAgent()) {
                 VirtualChannel channel = launcher.getChannel();
                 if (channel == null) {
                     throw new IllegalStateException("Launcher doesn't support remoting but it is required");
                 }
-                return channel.call(exec);
+                response = channel.call(exec);
+            } else {
+                response = exec.call();
             }
+            response.deleteSpillFileWhenFinalized(getContext().get(Run.class));
+            return response;
+        }
 
-            return exec.call();
+        private boolean runsOnAgent() throws IOException, InterruptedException {
+            switch (step.getExecuteOn()) {
+                case AGENT:
+                    return true;
+                case AUTO:
+                    return step.usesWorkspaceFiles();
+                case CONTROLLER:
+                    FilePath workspace = getContext().get(FilePath.class);
+                    if (step.usesWorkspaceFiles() && workspace != null && workspace.isRemote()) {
+                        throw new AbortException("executeOn: 'CONTROLLER' cannot use files of a workspace on an agent, " +
+                                "use 'AGENT' or 'AUTO'");
+                    }
+                    return false;
+                default:
+                    throw new IllegalArgumentException("Unsupported executeOn: " + step.getExecuteOn());
+            }
         }
 
         @Serial
@@ -476,4 +658,76 @@ public final class HttpRequestStep extends Step {
             return resolved;
         }
     }
+
+    /**
+     * Runs the request on the non-blocking engine, so no thread is held while waiting for the server.
+     * Requests the engine cannot serve fall back to {@link Execution}.
+     */
+    public static final class AsyncExecution extends StepExecution {
+
+        private final transient HttpRequestStep step;
+        private transient volatile Future<?> future;
+        private transient volatile StepExecution delegate;
+        private transient volatile Throwable stopCause;
+
+        AsyncExecution(@NonNull StepContext context, HttpRequestStep step) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            Execution resolver = new Execution(getContext(), step);
+            TaskListener listener = Objects.requireNonNull(getContext().get(TaskListener.class));
+            HttpRequestExecution exec = HttpRequestExecution.from(step,
+                    step.getQuiet() ? TaskListener.NULL : listener, resolver);
+            if (!exec.isAsyncCapable()) {
+                if (!step.getQuiet()) {
+                    listener.getLogger().println("Request cannot be executed asynchronously, falling back to the blocking engine");
+                }
+                delegate = resolver;
+                return resolver.start();
+            }
+
+            future = exec.callAsync(new FutureCallback<>() {
+                @Override
+                public void completed(ResponseContentSupplier response) {
+                    getContext().onSuccess(response);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    getContext().onFailure(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    getContext().onFailure(stopCause != null ? stopCause : new CancellationException());
+                }
+            });
+            return false;
+        }
+
+        @Override
+        public void stop(@NonNull Throwable cause) throws Exception {
+            StepExecution delegate = this.delegate;
+            if (delegate != null) {
+                delegate.stop(cause);
+                return;
+            }
+            stopCause = cause;
+            Future<?> future = this.future;
+            if (future == null || !future.cancel(true)) {
+                getContext().onFailure(cause);
+            }
+        }
+
+        @Override
+        public void onResume() {
+            getContext().onFailure(new AbortException("Resume after a restart not supported for async HTTP requests"));
+        }
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
 }
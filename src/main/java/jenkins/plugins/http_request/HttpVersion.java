@@ -0,0 +1,21 @@
+package jenkins.plugins.http_request;
+
+import hudson.util.ListBoxModel;
+
+/**
+ * Protocol version requested for a call.
+ * {@link #HTTP_2} is negotiated with ALPN on TLS connections, servers that do not offer it are
+ * still spoken to with HTTP/1.1.
+ */
+public enum HttpVersion {
+    HTTP_1_1,
+    HTTP_2;
+
+    public static ListBoxModel getFillItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (HttpVersion httpVersion : values()) {
+            items.add(httpVersion.name());
+        }
+        return items;
+    }
+}
@@ -3,15 +3,30 @@ package jenkins.plugins.http_request;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.FilterInputStream;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serial;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.ContentType;
@@ -19,6 +34,8 @@ import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 
@@ -26,6 +43,17 @@ import org.apache.commons.io.IOUtils;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.remoting.Channel;
+import hudson.remoting.RemoteInputStream;
+import jenkins.plugins.http_request.util.CompressingEntity;
+import jenkins.plugins.http_request.util.ContentDecoders;
+import jenkins.plugins.http_request.util.ContentMatcher;
+import jenkins.plugins.http_request.util.ResponseCache;
+import jenkins.plugins.http_request.util.SpilledBodies;
+import jenkins.util.SystemProperties;
+
 /**
  * A container for the Http Response.
  * <p>
@@ -39,16 +67,85 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOGGER = Logger.getLogger(ResponseContentSupplier.class.getName());
+
+    /**
+     * Unread bodies up to this size are drained on release, so the connection can go back to the pool.
+     */
+    private static final long MAX_DRAIN_LENGTH = 64 * 1024;
+
+    /**
+     * Bodies read as a String above this size are spooled to a file on the node executing the request,
+     * where they stay until the build is finalized, see {@link #deleteSpillFileWhenFinalized}. They are
+     * only read, through a remote stream from an agent, when the content is asked for.
+     * Read on every response, so it can be changed at run time on each node.
+     */
+    static final String SPILL_THRESHOLD_PROPERTY = ResponseContentSupplier.class.getName() + ".spillThreshold";
+
+    /**
+     * Spooled bodies above this size cannot be read as a String, which would hold all of them in the
+     * memory of the node asking for it, usually the controller. Their stream can still be read.
+     */
+    static final String MAX_SPILLED_CONTENT_PROPERTY = ResponseContentSupplier.class.getName() + ".maxSpilledContentBytes";
+
+    /**
+     * Spooled bodies left behind, by an agent that went away before returning them, are removed after this
+     * many hours.
+     */
+    private static final long SPILL_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(
+            SystemProperties.getLong(ResponseContentSupplier.class.getName() + ".spillRetentionHours", 24L));
+    private static final AtomicLong LAST_SPILL_SWEEP = new AtomicLong();
+
+    /**
+     * Bodies above this size are sent gzipped from the agent executing the request,
+     * and only decompressed when the content is asked for. Negative to never compress them.
+     */
+    private static final int REMOTING_COMPRESSION_THRESHOLD = SystemProperties.getInteger(
+            ResponseContentSupplier.class.getName() + ".remotingCompressionThreshold", 16 * 1024);
+
     private final int status;
     private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     private String charset;
 
     private ResponseHandle responseHandle;
+    /**
+     * The content of responses not read from a server, or read from a stream by {@link #getContent()}.
+     */
     private String content;
+    /**
+     * The body read upfront with {@link ResponseHandle#STRING}, decoded with {@link #charset} on demand.
+     */
+    private byte[] body;
+    /**
+     * {@link #body} as received gzipped from an agent, until it is first read.
+     */
+    private byte[] gzippedBody;
+    /**
+     * Whether the stream of a response left open follows, exported from the agent that read it.
+     */
+    private boolean streamed;
+    /**
+     * The body spooled on the node that read it, which never leaves it.
+     */
+    private FilePath spillFile;
+    private boolean cacheHit;
+    private boolean coalesced;
+    private String contentEncoding;
+    private long encodedBytes = -1;
+    private long decodedBytes = -1;
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient String decodedContent;
     @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
     private transient InputStream contentStream;
     @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
     private transient CloseableHttpClient httpclient;
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient CloseableHttpResponse response;
+    /**
+     * The expected content, looked for while the body was read upfront.
+     */
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient ContentMatcher contentMatcher;
 
     public ResponseContentSupplier(String content, int status) {
         this.content = content;
@@ -56,8 +153,17 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
     }
 
     public ResponseContentSupplier(ResponseHandle responseHandle, CloseableHttpResponse response) {
+        this(responseHandle, response, "");
+    }
+
+    /**
+     * Reads a response, looking for {@code expectedContent} while a {@link ResponseHandle#STRING} body
+     * is read upfront, so it is not read again from memory or from its spooled file to be validated.
+     */
+    ResponseContentSupplier(ResponseHandle responseHandle, CloseableHttpResponse response, String expectedContent) {
         this.status = response.getCode();
         this.responseHandle = responseHandle;
+        this.response = response;
         readHeaders(response);
         readCharset(response);
 
@@ -66,10 +172,17 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
             InputStream entityContent = entity != null ? entity.getContent() : null;
 
             if (responseHandle == ResponseHandle.STRING && entityContent != null) {
-                byte[] bytes = IOUtils.toByteArray(entityContent);
-                contentStream = new ByteArrayInputStream(bytes);
-                content = new String(bytes, charset == null || charset.isEmpty() ?
-                        Charset.defaultCharset().name() : charset);
+                if (!expectedContent.isEmpty()) {
+                    contentMatcher = contentMatcher(expectedContent);
+                    entityContent = contentMatcher.wrap(entityContent);
+                }
+                int spillThreshold = spillThreshold();
+                byte[] bytes = entityContent.readNBytes(spillThreshold + 1);
+                if (bytes.length > spillThreshold) {
+                    spill(bytes, entityContent);
+                } else {
+                    body = bytes;
+                }
             } else {
                 contentStream = entityContent;
             }
@@ -78,6 +191,66 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
         }
     }
 
+    /**
+     * Wraps a response read by the async client, whose body is already fully in memory.
+     */
+    public ResponseContentSupplier(ResponseHandle responseHandle, SimpleHttpResponse response) {
+        this.status = response.getCode();
+        this.responseHandle = responseHandle;
+        readHeaders(response);
+        Header contentTypeHeader = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+        readCharset(response.getContentType() != null ? response.getContentType().toString() :
+                (contentTypeHeader != null ? contentTypeHeader.getValue() : null));
+
+        byte[] bytes = response.getBodyBytes();
+        if (bytes != null) {
+            setBody(bytes);
+        }
+    }
+
+    /**
+     * Wraps a response served from {@link ResponseCache}.
+     */
+    ResponseContentSupplier(ResponseHandle responseHandle, ResponseCache.Entry entry) {
+        this.status = HttpStatus.SC_OK;
+        this.responseHandle = responseHandle;
+        this.cacheHit = true;
+        BasicHttpResponse response = new BasicHttpResponse(status);
+        response.setHeaders(entry.getHeaders());
+        readHeaders(response);
+        Header contentTypeHeader = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+        readCharset(contentTypeHeader != null ? contentTypeHeader.getValue() : null);
+
+        setBody(entry.getBody());
+    }
+
+    /**
+     * Wraps a response {@link #share shared} by an identical request.
+     */
+    ResponseContentSupplier(ResponseHandle responseHandle, Shared shared) {
+        this.status = shared.status;
+        this.responseHandle = responseHandle;
+        this.coalesced = true;
+        shared.headers.forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+        this.charset = shared.charset;
+
+        if (shared.body != null) {
+            setBody(shared.body);
+        }
+    }
+
+    /**
+     * Keeps a body already in memory: as is for {@link ResponseHandle#STRING}, so it goes along with
+     * this response, and only as a stream otherwise, like a body read from the connection.
+     */
+    private void setBody(byte[] bytes) {
+        if (responseHandle == ResponseHandle.STRING) {
+            body = bytes;
+        } else {
+            contentStream = new ByteArrayInputStream(bytes);
+        }
+    }
+
     @Whitelisted
     public int getStatus() {
         return this.status;
@@ -88,6 +261,55 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
         return this.headers;
     }
 
+    /**
+     * Whether the response was served from the cache, without a round trip or after a
+     * {@code 304 Not Modified} revalidation.
+     */
+    @Whitelisted
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * Whether the response is the one of an identical request that was in flight, shared with
+     * {@code coalesce: true}.
+     */
+    @Whitelisted
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * The {@code Content-Encoding} the body was decoded from, or {@code null} when it was not encoded.
+     */
+    @Whitelisted
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * The bytes of the encoded body received, or -1 when it was not encoded. A body left open only
+     * counts what was read before the step returned.
+     */
+    @Whitelisted
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     * The bytes the encoded body was decoded into, or -1 when it was not encoded.
+     */
+    @Whitelisted
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    void setDecoded(ContentDecoders.Counter counter) {
+        this.contentEncoding = counter.getEncoding();
+        this.encodedBytes = counter.getEncodedBytes();
+        this.decodedBytes = counter.getDecodedBytes();
+    }
+
     @Whitelisted
     public String getCharset() {
         return charset;
@@ -95,18 +317,29 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
 
     @Whitelisted
     public String getContent() {
-        if (responseHandle == ResponseHandle.STRING) {
-            return content;
-        }
         if (content != null) {
             return content;
         }
+        if (decodedContent != null) {
+            return decodedContent;
+        }
+        byte[] body = body();
+        if (body != null) {
+            decodedContent = new String(body, decodingCharset());
+            return decodedContent;
+        }
+        if (spillFile != null) {
+            decodedContent = readSpilledContent();
+            return decodedContent;
+        }
+        if (responseHandle == ResponseHandle.STRING) {
+            return null;
+        }
         if (contentStream == null) {
             return null;
         }
 
-        try (InputStreamReader in = new InputStreamReader(contentStream,
-                charset == null || charset.isEmpty() ? Charset.defaultCharset().name() : charset)) {
+        try (InputStreamReader in = new InputStreamReader(contentStream, decodingCharset())) {
             content = IOUtils.toString(in);
             return content;
         } catch (IOException e) {
@@ -118,16 +351,147 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
 
     @Whitelisted
     public InputStream getContentStream() {
+        byte[] body = body();
+        if (body != null) {
+            return new ByteArrayInputStream(body);
+        }
+        if (spillFile != null) {
+            try {
+                return spillFile.read();
+            } catch (IOException e) {
+                throw spillFileUnreadable(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw spillFileUnreadable(e);
+            }
+        }
         return contentStream;
     }
 
-    private void readCharset(ClassicHttpResponse response) {
-        Charset charset = null;
+    /**
+     * Whether the content is already in memory as a String, so looking into it is cheap.
+     */
+    boolean isContentLoaded() {
+        return content != null || decodedContent != null;
+    }
+
+    /**
+     * Whether the body is still gzipped, as received from an agent and not read since.
+     */
+    boolean isGzipped() {
+        return gzippedBody != null;
+    }
+
+    private byte[] body() {
+        if (gzippedBody != null) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzippedBody))) {
+                body = in.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException("Error decompressing response received from the agent", e);
+            }
+            gzippedBody = null;
+        }
+        return body;
+    }
+
+    private String readSpilledContent() {
+        long maxLength = SystemProperties.getLong(MAX_SPILLED_CONTENT_PROPERTY, 64L * 1024 * 1024);
+        try {
+            long length = spillFile.length();
+            if (length > maxLength) {
+                throw new IllegalStateException("The response body of " + length + " bytes is larger than the " +
+                        maxLength + " bytes it can be read as a String with, read it with getContentStream() or " +
+                        "save it with outputFile instead");
+            }
+            try (InputStreamReader in = new InputStreamReader(spillFile.read(), decodingCharset())) {
+                return IOUtils.toString(in);
+            }
+        } catch (IOException e) {
+            throw spillFileUnreadable(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw spillFileUnreadable(e);
+        }
+    }
+
+    private IllegalStateException spillFileUnreadable(Exception e) {
+        return new IllegalStateException("Error reading response spooled to " + spillFile +
+                ", it can only be read while the node that sent the request is connected", e);
+    }
+
+    /**
+     * The matcher the expected content was looked for with while the body was read upfront, or
+     * {@code null} when it was not.
+     */
+    ContentMatcher getContentMatcher() {
+        return contentMatcher;
+    }
+
+    /**
+     * A matcher for {@code expectedContent} in the body, encoded like the body is decoded.
+     */
+    ContentMatcher contentMatcher(String expectedContent) {
+        return new ContentMatcher(expectedContent.getBytes(decodingCharset()));
+    }
+
+    private Charset decodingCharset() {
+        return charset == null || charset.isEmpty() ? Charset.defaultCharset() : Charset.forName(charset);
+    }
+
+    /**
+     * A copy of this response for identical requests, or {@code null} when its body is too large to be
+     * kept in memory or was not read from a server. The body is read upfront, this response keeps
+     * returning it.
+     */
+    Shared share() throws IOException {
+        if (spillFile != null) {
+            return null;
+        }
+        byte[] body = body();
+        if (body != null) {
+            return new Shared(status, headers, charset, body);
+        }
+        if (contentStream == null) {
+            return content != null ? null : new Shared(status, headers, charset, null);
+        }
+        int spillThreshold = spillThreshold();
+        byte[] head = contentStream.readNBytes(spillThreshold + 1);
+        if (head.length > spillThreshold) {
+            contentStream = new SequenceInputStream(new ByteArrayInputStream(head), contentStream);
+            return null;
+        }
+        contentStream = new ByteArrayInputStream(head);
+        return new Shared(status, headers, charset, head);
+    }
+
+    /**
+     * What identical requests get of a response.
+     */
+    static final class Shared {
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final String charset;
+        private final byte[] body;
+
+        private Shared(int status, Map<String, List<String>> headers, String charset, byte[] body) {
+            this.status = status;
+            this.headers = new TreeMap<>(headers);
+            this.charset = charset;
+            this.body = body;
+        }
+    }
 
+    private void readCharset(ClassicHttpResponse response) {
         Header contentTypeHeader = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
-        ContentType contentType = ContentType.parse(response.getEntity() != null ?
+        readCharset(response.getEntity() != null ?
                         response.getEntity().getContentType() :
                         (contentTypeHeader != null ? contentTypeHeader.getValue() : null));
+    }
+
+    private void readCharset(String contentTypeValue) {
+        Charset charset = null;
+
+        ContentType contentType = ContentType.parse(contentTypeValue);
         if (contentType != null) {
             charset = contentType.getCharset();
             if (charset == null) {
@@ -154,13 +518,138 @@ public class ResponseContentSupplier implements Serializable, AutoCloseable {
     }
 
     @Override
+    @Whitelisted
     public void close() throws IOException {
+        if (response != null) {
+            response.close();
+        }
         if (httpclient != null) {
             httpclient.close();
         }
         if (contentStream != null) {
             contentStream.close();
         }
+        try {
+            deleteSpillFile();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Across a remoting channel, gzips a large body and exports the stream of a response left open,
+     * whose connection is closed along with the stream. A spooled body stays where it is, the
+     * {@link FilePath} to it works from the other side.
+     */
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (Channel.current() == null) {
+            out.defaultWriteObject();
+            return;
+        }
+        byte[] plain = body;
+        byte[] gzipped = gzippedBody;
+        if (plain != null && REMOTING_COMPRESSION_THRESHOLD >= 0 && plain.length > REMOTING_COMPRESSION_THRESHOLD) {
+            gzippedBody = CompressingEntity.compress(plain, CompressingEntity.GZIP);
+            body = null;
+        }
+        streamed = responseHandle == ResponseHandle.LEAVE_OPEN && contentStream != null;
+        try {
+            out.defaultWriteObject();
+        } finally {
+            body = plain;
+            gzippedBody = gzipped;
+        }
+        if (streamed) {
+            out.writeObject(new RemoteInputStream(new FilterInputStream(contentStream) {
+                @Override
+                public void close() throws IOException {
+                    ResponseContentSupplier.this.close();
+                }
+            }, RemoteInputStream.Flag.NOT_GREEDY));
+        }
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (streamed) {
+            contentStream = (InputStream) in.readObject();
+            streamed = false;
+        }
+    }
+
+    private void spill(byte[] head, InputStream rest) throws IOException {
+        Path directory = Files.createDirectories(Paths.get(System.getProperty("java.io.tmpdir"), "http_request-responses"));
+        sweepSpillFiles(directory);
+        Path file = Files.createTempFile(directory, "response", ".body");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(head);
+            rest.transferTo(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        spillFile = new FilePath(file.toFile());
+    }
+
+    /**
+     * Deletes the spooled body, if any, once {@code run} is finalized, so the response can outlive the
+     * step returning it and still be read. Call it where the response is returned to the build.
+     */
+    void deleteSpillFileWhenFinalized(Run<?, ?> run) {
+        if (spillFile != null && run != null) {
+            SpilledBodies.deleteWhenFinalized(run, spillFile);
+        }
+    }
+
+    /**
+     * Deletes the spooled body, if any.
+     */
+    void deleteSpillFile() throws IOException, InterruptedException {
+        if (spillFile == null) {
+            return;
+        }
+        spillFile.delete();
+        spillFile = null;
+    }
+
+    private static int spillThreshold() {
+        return SystemProperties.getInteger(SPILL_THRESHOLD_PROPERTY, 8 * 1024 * 1024);
+    }
+
+    private static void sweepSpillFiles(Path directory) {
+        long now = System.currentTimeMillis();
+        long last = LAST_SPILL_SWEEP.get();
+        if (now - last < TimeUnit.HOURS.toMillis(1) || !LAST_SPILL_SWEEP.compareAndSet(last, now)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "response*.body")) {
+            for (Path file : files) {
+                if (now - Files.getLastModifiedTime(file).toMillis() > SPILL_RETENTION_MILLIS) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to remove old responses from " + directory, e);
+        }
+    }
+
+    /**
+     * Releases the connection backing this response.
+     * A small unread body is drained so the connection can be reused, otherwise it is discarded.
+     */
+    void release() throws IOException {
+        if (response == null) {
+            return;
+        }
+        HttpEntity entity = response.getEntity();
+        if (contentStream != null && entity != null
+                && entity.getContentLength() >= 0 && entity.getContentLength() <= MAX_DRAIN_LENGTH) {
+            contentStream.close();
+        }
+        response.close();
     }
 
     void setHttpClient(CloseableHttpClient httpclient) {
@@ -2,7 +2,17 @@ package jenkins.plugins.http_request.auth;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLContext;
 
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
@@ -21,11 +31,30 @@ import org.apache.hc.core5.ssl.SSLContexts;
 import org.apache.hc.core5.ssl.TrustStrategy;
 
 import com.cloudbees.plugins.credentials.common.StandardCertificateCredentials;
+import com.cloudbees.plugins.credentials.impl.CertificateCredentialsImpl;
 
 import hudson.Util;
 
+import jenkins.plugins.http_request.util.HttpClientRegistry;
+import jenkins.util.SystemProperties;
+
 public class CertificateAuthentication implements Authenticator {
 
+    /**
+     * Contexts built from the key material for the {@link #MAX_SSL_CONTEXTS} credentials used last,
+     * by credential id, so the keystore is not decoded again on every request. Only the context of
+     * the latest key material of a credential is kept.
+     */
+    private static final int MAX_SSL_CONTEXTS = SystemProperties.getInteger(
+            CertificateAuthentication.class.getName() + ".maxSslContexts", 64);
+    private static final Map<String, CachedContext> SSL_CONTEXTS = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedContext>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedContext> eldest) {
+                    return size() > MAX_SSL_CONTEXTS;
+                }
+            });
+
     private final StandardCertificateCredentials credentials;
 
     private final boolean ignoreSslErrors;
@@ -51,55 +80,43 @@ public class CertificateAuthentication implements Authenticator {
                                             HttpUriRequestBase requestBase,
                                             PrintStream logger) throws IOException {
         try {
-            KeyStore keyStore = credentials.getKeyStore();
-            // Note: modeled after CertificateCredentialsImpl.toCharArray()
-            // which ignores both null and "" empty passwords, even though
-            // technically the byte stream reader there *can* decipher with
-            // "" as the password. The null value is explicitly ignored by
-            // ultimate sun.security.pkcs12.PKCS12KeyStore::engineLoad(),
-            // for more context see comments in its sources.
-            String keyStorePass = Util.fixEmpty(credentials.getPassword().getPlainText());
-            char[] keyStorePassChars = (keyStorePass == null ? null : keyStorePass.toCharArray());
-            SSLContextBuilder contextBuilder = SSLContexts.custom();
-
-            if (keyStorePassChars == null) {
-                logger.println("WARNING: Jenkins Certificate Credential '" +
-                    credentials.getId() + "' was saved without a password, " +
-                    "so any certificates (and chain of trust) in it would " +
-                    "be ignored by Java PKCS12 support!");
-            }
-
-            try {
-                TrustStrategy trustStrategy = null;
-                if (ignoreSslErrors) {
-                    // e.g. for user certificate issued by test CA so
-                    // is not persisted in the system 'cacerts' file.
-                    // Hopefully it is at least added/trusted in the
-                    // generated keystore...
-                    trustStrategy = new TrustAllStrategy();
-                    //trustStrategy = new TrustSelfSignedStrategy();
+            String fingerprint = fingerprint();
+            String cacheKey = credentials.getId() + (ignoreSslErrors ? ":insecure" : "");
+            CachedContext cached = fingerprint != null ? SSL_CONTEXTS.get(cacheKey) : null;
+            if (cached != null && cached.fingerprint().equals(fingerprint)) {
+                if (cached.trustMaterial()) {
+                    logger.println("Added Trust Material from provided KeyStore (cached)");
+                }
+                logger.println("Added Key Material from provided KeyStore (cached)");
+            } else {
+                cached = buildSslContext(fingerprint, logger);
+                if (fingerprint != null) {
+                    SSL_CONTEXTS.put(cacheKey, cached);
                 }
-
-                contextBuilder.loadTrustMaterial(keyStore, trustStrategy);
-                logger.println("Added Trust Material from provided KeyStore");
-            } catch (Exception e) {
-                logger.println("Failed to add Trust Material from provided KeyStore (so Key Material might end up untrusted): " + e.getMessage());
-                // Do no re-throw, maybe system trust would suffice?
-                // TODO: Can we identify lack of trust material in
-                //  key store vs. inability to load what exists?..
-                //  And do we really care about the difference?
             }
 
-            contextBuilder.loadKeyMaterial(keyStore, keyStorePassChars);
-            logger.println("Added Key Material from provided KeyStore");
-
-            ConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(contextBuilder.build(), new DefaultHostnameVerifier());
-            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
-                            .register("https", sslsf)
-                            .register("http", new PlainConnectionSocketFactory())
-                            .build();
-            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
-            clientBuilder.setConnectionManager(connectionManager);
+            SSLContext sslContext = cached.sslContext();
+            Supplier<PoolingHttpClientConnectionManager> connectionManagerFactory = () -> {
+                ConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslContext, new DefaultHostnameVerifier());
+                Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
+                                .register("https", sslsf)
+                                .register("http", new PlainConnectionSocketFactory())
+                                .build();
+                return new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+            };
+            if (fingerprint != null) {
+                // the pool only ever serves this key material, so its connections can be reused
+                // without tracking the client principal as connection state
+                HttpClientRegistry.Key key = new HttpClientRegistry.Key(ignoreSslErrors ? "insecure" : "default",
+                        "", 0, "certificate:" + credentials.getId() + ":" + fingerprint);
+                clientBuilder.setConnectionManager(HttpClientRegistry.connectionManager(key, connectionManagerFactory));
+                clientBuilder.setConnectionManagerShared(true);
+                clientBuilder.disableConnectionState();
+            } else {
+                clientBuilder.setConnectionManager(connectionManagerFactory.get());
+                // this pool belongs to the client, close it together with the client
+                clientBuilder.setConnectionManagerShared(false);
+            }
             logger.println("Set SSL context and socket factory for the HTTP client builder");
 
             return clientBuilder.build();
@@ -108,4 +125,74 @@ public class CertificateAuthentication implements Authenticator {
             throw new IOException(e);
         }
     }
+
+    private CachedContext buildSslContext(String fingerprint, PrintStream logger) throws Exception {
+        KeyStore keyStore = credentials.getKeyStore();
+        // Note: modeled after CertificateCredentialsImpl.toCharArray()
+        // which ignores both null and "" empty passwords, even though
+        // technically the byte stream reader there *can* decipher with
+        // "" as the password. The null value is explicitly ignored by
+        // ultimate sun.security.pkcs12.PKCS12KeyStore::engineLoad(),
+        // for more context see comments in its sources.
+        String keyStorePass = Util.fixEmpty(credentials.getPassword().getPlainText());
+        char[] keyStorePassChars = (keyStorePass == null ? null : keyStorePass.toCharArray());
+        SSLContextBuilder contextBuilder = SSLContexts.custom();
+
+        if (keyStorePassChars == null) {
+            logger.println("WARNING: Jenkins Certificate Credential '" +
+                credentials.getId() + "' was saved without a password, " +
+                "so any certificates (and chain of trust) in it would " +
+                "be ignored by Java PKCS12 support!");
+        }
+
+        boolean trustMaterial = false;
+        try {
+            TrustStrategy trustStrategy = null;
+            if (ignoreSslErrors) {
+                // e.g. for user certificate issued by test CA so
+                // is not persisted in the system 'cacerts' file.
+                // Hopefully it is at least added/trusted in the
+                // generated keystore...
+                trustStrategy = new TrustAllStrategy();
+                //trustStrategy = new TrustSelfSignedStrategy();
+            }
+
+            contextBuilder.loadTrustMaterial(keyStore, trustStrategy);
+            trustMaterial = true;
+            logger.println("Added Trust Material from provided KeyStore");
+        } catch (Exception e) {
+            logger.println("Failed to add Trust Material from provided KeyStore (so Key Material might end up untrusted): " + e.getMessage());
+            // Do no re-throw, maybe system trust would suffice?
+            // TODO: Can we identify lack of trust material in
+            //  key store vs. inability to load what exists?..
+            //  And do we really care about the difference?
+        }
+
+        contextBuilder.loadKeyMaterial(keyStore, keyStorePassChars);
+        logger.println("Added Key Material from provided KeyStore");
+
+        return new CachedContext(fingerprint, contextBuilder.build(), trustMaterial);
+    }
+
+    /**
+     * Digest of the keystore bytes and password, so a cached context is dropped as soon as the
+     * credential is updated. {@code null} when the keystore bytes are not available.
+     */
+    private String fingerprint() throws NoSuchAlgorithmException {
+        if (!(credentials instanceof CertificateCredentialsImpl certificateCredentials)
+                || certificateCredentials.getKeyStoreSource() == null) {
+            return null;
+        }
+        byte[] keyStoreBytes = certificateCredentials.getKeyStoreSource().getKeyStoreBytes();
+        if (keyStoreBytes == null) {
+            return null;
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(keyStoreBytes);
+        digest.update(credentials.getPassword().getPlainText().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private record CachedContext(String fingerprint, SSLContext sslContext, boolean trustMaterial) {
+    }
 }
@@ -67,8 +67,21 @@ public class CredentialBasicAuthentication implements Authenticator {
                 credential.getUsername(), credential.getPassword().getPlainText(), extraCredentials);
     }
 
+    /**
+     * Registers the credentials on the execution context only, for clients shared between requests.
+     */
+    public void prepare(HttpClientContext context, HttpHost targetHost) {
+        auth(context, targetHost, credential.getUsername(), credential.getPassword().getPlainText(), extraCredentials);
+    }
+
     static void auth(HttpClientBuilder clientBuilder, HttpClientContext context, HttpHost targetHost,
                      String username, String password, Map<HttpHost, StandardUsernamePasswordCredentials> extraCreds) {
+        BasicCredentialsProvider provider = auth(context, targetHost, username, password, extraCreds);
+        clientBuilder.setDefaultCredentialsProvider(provider);
+    }
+
+    static BasicCredentialsProvider auth(HttpClientContext context, HttpHost targetHost,
+                     String username, String password, Map<HttpHost, StandardUsernamePasswordCredentials> extraCreds) {
         BasicCredentialsProvider provider = new BasicCredentialsProvider();
         AuthCache authCache = new BasicAuthCache();
 
@@ -84,9 +97,9 @@ public class CredentialBasicAuthentication implements Authenticator {
             }
         }
 
-        clientBuilder.setDefaultCredentialsProvider(provider);
         context.setAuthCache(authCache);
         context.setCredentialsProvider(provider);
+        return provider;
     }
 
     static void setCredentials(HttpHost targetHost, BasicCredentialsProvider provider, AuthCache authCache, Credentials credentials) {
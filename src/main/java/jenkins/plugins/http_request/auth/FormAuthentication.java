@@ -9,7 +9,9 @@ import java.util.List;
 
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
 import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -59,9 +61,17 @@ public class FormAuthentication extends AbstractDescribableImpl<FormAuthenticati
             final HttpUriRequestBase method = clientUtil.createRequestBase(requestAction);
 
             final HttpResponse execute = clientUtil.execute(client, context, method, logger);
-            //from 400(client error) to 599(server error)
-            if ((execute.getCode() >= 400 && execute.getCode() <= 599)) {
-                throw new IllegalStateException("Error doing authentication");
+            try {
+                //from 400(client error) to 599(server error)
+                if ((execute.getCode() >= 400 && execute.getCode() <= 599)) {
+                    throw new IllegalStateException("Error doing authentication");
+                }
+            } finally {
+                // give the connection back to the shared pool
+                if (execute instanceof ClassicHttpResponse classicHttpResponse) {
+                    EntityUtils.consumeQuietly(classicHttpResponse.getEntity());
+                    classicHttpResponse.close();
+                }
             }
         }
         return client;
@@ -0,0 +1,105 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
+/**
+ * Collects the console output of a request executed on an agent, so it reaches the build log in a few
+ * remoting calls instead of one per line. Output is sent once the buffer is full, at the latest
+ * {@link #FLUSH_DELAY_MILLIS} after it was written, and when flushed explicitly.
+ */
+public final class BatchingOutputStream extends OutputStream {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchingOutputStream.class.getName());
+
+    private static final int BUFFER_SIZE = SystemProperties.getInteger(
+            BatchingOutputStream.class.getName() + ".bufferSize", 8 * 1024);
+    private static final long FLUSH_DELAY_MILLIS = SystemProperties.getLong(
+            BatchingOutputStream.class.getName() + ".flushDelayMillis", 500L);
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "httpRequest log flusher"));
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private ScheduledFuture<?> scheduledFlush;
+
+    public BatchingOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeBuffer();
+        }
+        buffer[count++] = (byte) b;
+        scheduleFlush();
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (len > buffer.length - count) {
+            writeBuffer();
+        }
+        if (len >= buffer.length) {
+            out.write(b, off, len);
+            return;
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+        scheduleFlush();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        writeBuffer();
+        out.flush();
+    }
+
+    /**
+     * Sends what is buffered, leaving the underlying stream open.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void writeBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (scheduledFlush == null) {
+            scheduledFlush = FLUSHER.schedule(this::flushScheduled, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushScheduled() {
+        scheduledFlush = null;
+        try {
+            writeBuffer();
+            out.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not send the console output of the request", e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.PrintStream;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hudson.AbortException;
+
+/**
+ * Caps the requests executed at once against the hosts of a {@link ConcurrencyLimit}, making the
+ * excess wait for a free slot in arrival order, for a bounded time.
+ * <p>
+ * There is one bulkhead per host pattern and JVM, shared by every build executing requests in it.
+ */
+public final class Bulkhead {
+
+    private static final Map<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+    private final String hostPattern;
+    private volatile int maxConcurrentRequests;
+    private final Slots slots;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    private Bulkhead(String hostPattern, int maxConcurrentRequests) {
+        this.hostPattern = hostPattern;
+        this.maxConcurrentRequests = Math.max(maxConcurrentRequests, 1);
+        this.slots = new Slots(this.maxConcurrentRequests);
+    }
+
+    /**
+     * The bulkhead of {@code limit}, resized when the limit was changed.
+     */
+    public static Bulkhead of(ConcurrencyLimit limit) {
+        Bulkhead bulkhead = BULKHEADS.computeIfAbsent(limit.getHostPattern(),
+                pattern -> new Bulkhead(pattern, limit.getMaxConcurrentRequests()));
+        bulkhead.resize(limit.getMaxConcurrentRequests());
+        return bulkhead;
+    }
+
+    /**
+     * Changes the number of slots, keeping the requests in flight. When shrinking, slots are taken
+     * away as the requests in flight complete, so the host is never sent more than the new limit
+     * once they did.
+     */
+    private synchronized void resize(int maxConcurrentRequests) {
+        int size = Math.max(maxConcurrentRequests, 1);
+        int delta = size - this.maxConcurrentRequests;
+        if (delta > 0) {
+            slots.release(delta);
+        } else if (delta < 0) {
+            slots.reduce(-delta);
+        }
+        this.maxConcurrentRequests = size;
+    }
+
+    /**
+     * The bulkheads of this JVM, sorted by host pattern.
+     */
+    public static List<Bulkhead> all() {
+        List<Bulkhead> bulkheads = new ArrayList<>(BULKHEADS.values());
+        bulkheads.sort(Comparator.comparing(Bulkhead::getHostPattern));
+        return bulkheads;
+    }
+
+    /**
+     * Waits for a free slot, for at most {@code maxWaitSeconds}.
+     *
+     * @param logger where to tell that the request had to wait
+     * @return the slot, to close once the request is done
+     * @throws AbortException when no slot was freed in time
+     */
+    public Slot acquire(int maxWaitSeconds, PrintStream logger) throws InterruptedException, AbortException {
+        if (slots.tryAcquire()) {
+            acquired.incrementAndGet();
+            return new Slot();
+        }
+        logger.println("Waiting for one of the " + maxConcurrentRequests + " concurrent requests allowed to " + hostPattern
+                + ", " + waiting.get() + " request(s) queued");
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean free;
+        try {
+            free = slots.tryAcquire(Math.max(maxWaitSeconds, 0), TimeUnit.SECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        waits.incrementAndGet();
+        totalWaitMillis.addAndGet(waited);
+        maxWaitMillis.accumulateAndGet(waited, Math::max);
+        if (!free) {
+            rejected.incrementAndGet();
+            throw new AbortException("Fail: none of the " + maxConcurrentRequests + " concurrent requests allowed to "
+                    + hostPattern + " completed within " + maxWaitSeconds + "s");
+        }
+        acquired.incrementAndGet();
+        logger.println("Waited " + waited + " ms for a free slot");
+        return new Slot();
+    }
+
+    public String getHostPattern() {
+        return hostPattern;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public int getInFlight() {
+        return maxConcurrentRequests - slots.availablePermits();
+    }
+
+    /**
+     * The number of requests waiting for a slot.
+     */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    /**
+     * The number of requests that gave up waiting.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * The average wait of the requests that found no free slot, in milliseconds.
+     */
+    public long getAverageWaitMillis() {
+        long count = waits.get();
+        return count == 0 ? 0 : totalWaitMillis.get() / count;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    /**
+     * A fair semaphore that can lose permits, going negative while more requests are in flight than
+     * the bulkhead was shrunk to.
+     */
+    private static final class Slots extends Semaphore {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private Slots(int permits) {
+            super(permits, true);
+        }
+
+        void reduce(int permits) {
+            reducePermits(permits);
+        }
+    }
+
+    /**
+     * A slot taken in the bulkhead, freed when closed.
+     */
+    public final class Slot implements AutoCloseable {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Slot() {
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                slots.release();
+            }
+        }
+    }
+}
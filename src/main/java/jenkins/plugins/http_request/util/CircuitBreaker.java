@@ -0,0 +1,229 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import hudson.AbortException;
+
+/**
+ * Stops sending requests to a host once too many of the recent ones failed or were slow, so builds
+ * fail fast instead of each waiting for its own timeout.
+ * <p>
+ * There is one breaker per host and JVM, shared by every build executing requests in it. Once
+ * {@link CircuitBreakerSettings#getOpenDurationSeconds()} have passed, the circuit lets a single
+ * probe through: it closes again when the probe succeeds, and stays open otherwise. Calls let through
+ * before the circuit last changed state are not counted when they complete.
+ */
+public final class CircuitBreaker {
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String host;
+    private State state = State.CLOSED;
+    private boolean[] failed = new boolean[0];
+    private boolean[] slow = new boolean[0];
+    private int calls;
+    private int next;
+    private long openedAt;
+    private long openMillis;
+    private boolean probing;
+    /**
+     * Counts the times the circuit opened or closed, so the outcome of a call is only counted in the
+     * state it was let through in.
+     */
+    private long generation;
+
+    private CircuitBreaker(String host) {
+        this.host = host;
+    }
+
+    public static CircuitBreaker of(String host) {
+        return BREAKERS.computeIfAbsent(host, CircuitBreaker::new);
+    }
+
+    /**
+     * The breakers of this JVM, sorted by host.
+     */
+    public static List<CircuitBreaker> all() {
+        List<CircuitBreaker> breakers = new ArrayList<>(BREAKERS.values());
+        breakers.sort(Comparator.comparing(CircuitBreaker::getHost));
+        return breakers;
+    }
+
+    /**
+     * Lets a call through, or throws when the circuit is open.
+     *
+     * @return the permit of the call, which must be given back with its outcome, or released
+     */
+    public synchronized Permit acquire() throws OpenException {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            if (remaining > 0) {
+                throw new OpenException("Fail: circuit breaker for " + host + " is open, "
+                        + "not sending requests to it for another " + TimeUnit.MILLISECONDS.toSeconds(remaining + 999) + "s");
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                throw new OpenException("Fail: circuit breaker for " + host + " is half open, waiting for a probe request to complete");
+            }
+            probing = true;
+            return new Permit(generation, true);
+        }
+        return new Permit(generation, false);
+    }
+
+    private synchronized void record(Permit permit, CircuitBreakerSettings settings, boolean failure, long durationMillis) {
+        if (permit.generation != generation) {
+            // a call let through before the circuit opened or closed
+            return;
+        }
+        boolean slowCall = durationMillis >= settings.getSlowCallDurationMillis();
+        if (permit.probe) {
+            probing = false;
+            if (failure || slowCall) {
+                open(settings);
+            } else {
+                state = State.CLOSED;
+                generation++;
+                reset(settings);
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (failed.length != Math.max(settings.getWindowSize(), 1)) {
+            reset(settings);
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        next = (next + 1) % failed.length;
+        calls = Math.min(calls + 1, failed.length);
+        if (calls >= settings.getMinimumCalls()
+                && (rate(failed) >= settings.getFailureRateThreshold() || rate(slow) >= settings.getSlowCallRateThreshold())) {
+            open(settings);
+        }
+    }
+
+    private synchronized void release(Permit permit) {
+        if (permit.probe && permit.generation == generation) {
+            probing = false;
+        }
+    }
+
+    private void open(CircuitBreakerSettings settings) {
+        state = State.OPEN;
+        generation++;
+        openedAt = System.currentTimeMillis();
+        openMillis = TimeUnit.SECONDS.toMillis(settings.getOpenDurationSeconds());
+        reset(settings);
+    }
+
+    private void reset(CircuitBreakerSettings settings) {
+        failed = new boolean[Math.max(settings.getWindowSize(), 1)];
+        slow = new boolean[failed.length];
+        calls = 0;
+        next = 0;
+    }
+
+    private int rate(boolean[] outcomes) {
+        if (calls == 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < calls; i++) {
+            if (outcomes[i]) {
+                count++;
+            }
+        }
+        return count * 100 / calls;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openedAt + openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int getCalls() {
+        return calls;
+    }
+
+    public synchronized int getFailureRate() {
+        return rate(failed);
+    }
+
+    public synchronized int getSlowCallRate() {
+        return rate(slow);
+    }
+
+    /**
+     * A call let through by {@link #acquire}, which only counts in the state of the circuit it was let
+     * through in. Only the probe of a half open circuit decides whether it closes again.
+     */
+    public final class Permit {
+        private final long generation;
+        private final boolean probe;
+        private boolean done;
+
+        private Permit(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        /**
+         * Records the outcome of the call, once.
+         */
+        public void record(CircuitBreakerSettings settings, boolean failure, long durationMillis) {
+            if (complete()) {
+                CircuitBreaker.this.record(this, settings, failure, durationMillis);
+            }
+        }
+
+        /**
+         * Gives back a call that ended without an outcome, like a cancelled one or one that could not
+         * be sent. Does nothing once the outcome was recorded.
+         */
+        public void release() {
+            if (complete()) {
+                CircuitBreaker.this.release(this);
+            }
+        }
+
+        private synchronized boolean complete() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit of its host is open.
+     */
+    public static class OpenException extends AbortException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+/**
+ * Thresholds of the {@link CircuitBreaker}s, configured globally and shipped with each request
+ * to the node executing it.
+ */
+public class CircuitBreakerSettings extends AbstractDescribableImpl<CircuitBreakerSettings> implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private int failureRateThreshold = DescriptorImpl.failureRateThreshold;
+    private int slowCallRateThreshold = DescriptorImpl.slowCallRateThreshold;
+    private long slowCallDurationMillis = DescriptorImpl.slowCallDurationMillis;
+    private int windowSize = DescriptorImpl.windowSize;
+    private int minimumCalls = DescriptorImpl.minimumCalls;
+    private int openDurationSeconds = DescriptorImpl.openDurationSeconds;
+
+    @DataBoundConstructor
+    public CircuitBreakerSettings() {
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    @DataBoundSetter
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    @DataBoundSetter
+    public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    @DataBoundSetter
+    public void setSlowCallDurationMillis(long slowCallDurationMillis) {
+        this.slowCallDurationMillis = slowCallDurationMillis;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    @DataBoundSetter
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    @DataBoundSetter
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public int getOpenDurationSeconds() {
+        return openDurationSeconds;
+    }
+
+    @DataBoundSetter
+    public void setOpenDurationSeconds(int openDurationSeconds) {
+        this.openDurationSeconds = openDurationSeconds;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<CircuitBreakerSettings> {
+        public static final int failureRateThreshold = 50;
+        public static final int slowCallRateThreshold = 100;
+        public static final long slowCallDurationMillis = 10000;
+        public static final int windowSize = 20;
+        public static final int minimumCalls = 10;
+        public static final int openDurationSeconds = 30;
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Circuit breaker";
+        }
+
+        public FormValidation doCheckFailureRateThreshold(@QueryParameter int value) {
+            return checkPercentage(value);
+        }
+
+        public FormValidation doCheckSlowCallRateThreshold(@QueryParameter int value) {
+            return checkPercentage(value);
+        }
+
+        public FormValidation doCheckWindowSize(@QueryParameter int value) {
+            if (value < 1) {
+                return FormValidation.error("Window size must be at least 1");
+            }
+            return FormValidation.ok();
+        }
+
+        private static FormValidation checkPercentage(int value) {
+            if (value < 1 || value > 100) {
+                return FormValidation.error("Threshold must be a percentage between 1 and 100");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
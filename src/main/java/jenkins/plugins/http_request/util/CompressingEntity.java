@@ -0,0 +1,85 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+/**
+ * Compresses a request body while it is written to the connection, so it is never held in memory
+ * or on disk compressed. The length of the compressed body is unknown, it is sent chunked.
+ */
+public final class CompressingEntity extends HttpEntityWrapper {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final List<String> ENCODINGS = List.of(GZIP, DEFLATE);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String encoding;
+
+    public CompressingEntity(HttpEntity entity, String encoding) {
+        super(entity);
+        if (!ENCODINGS.contains(encoding)) {
+            throw new IllegalArgumentException("Unsupported request compression: " + encoding + ", use one of " + ENCODINGS);
+        }
+        this.encoding = encoding;
+    }
+
+    /**
+     * Compresses {@code body} in memory, for clients that need the whole body upfront.
+     */
+    public static byte[] compress(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(body.length / 4, 32));
+        try (OutputStream compressing = open(out, encoding)) {
+            compressing.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static OutputStream open(OutputStream out, String encoding) throws IOException {
+        // "deflate" is the zlib format, which DeflaterOutputStream writes by default
+        return GZIP.equals(encoding) ? new GZIPOutputStream(out, BUFFER_SIZE) : new DeflaterOutputStream(out);
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return true;
+    }
+
+    /**
+     * The compressed body, compressed in memory: only for callers that read the entity rather than
+     * letting the client write it.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        try (OutputStream compressing = open(outStream, encoding)) {
+            super.writeTo(compressing);
+        }
+    }
+}
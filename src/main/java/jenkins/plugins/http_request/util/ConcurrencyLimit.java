@@ -0,0 +1,99 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+/**
+ * The most requests executed at once against the hosts matching a pattern, configured globally
+ * and enforced by a {@link Bulkhead} on each node.
+ * <p>
+ * The pattern is a host name where {@code *} matches any characters, optionally followed by a port,
+ * like {@code *.example.com} or {@code api.example.com:8443}.
+ */
+public class ConcurrencyLimit extends AbstractDescribableImpl<ConcurrencyLimit> implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String hostPattern;
+    private final int maxConcurrentRequests;
+    private int maxWaitSeconds = DescriptorImpl.maxWaitSeconds;
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient volatile HostPattern compiledHostPattern;
+
+    @DataBoundConstructor
+    public ConcurrencyLimit(String hostPattern, int maxConcurrentRequests) {
+        this.hostPattern = hostPattern != null ? hostPattern.trim() : "";
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public String getHostPattern() {
+        return hostPattern;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public int getMaxWaitSeconds() {
+        return maxWaitSeconds;
+    }
+
+    @DataBoundSetter
+    public void setMaxWaitSeconds(int maxWaitSeconds) {
+        this.maxWaitSeconds = maxWaitSeconds;
+    }
+
+    /**
+     * Whether the pattern matches {@code host}, or {@code host:port} when the URL names a port.
+     */
+    public boolean matches(String host, int port) {
+        HostPattern pattern = compiledHostPattern;
+        if (pattern == null) {
+            pattern = HostPattern.compile(hostPattern);
+            compiledHostPattern = pattern;
+        }
+        return pattern != null && pattern.matches(host, port);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<ConcurrencyLimit> {
+        public static final int maxConcurrentRequests = 10;
+        public static final int maxWaitSeconds = 60;
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Concurrency limit";
+        }
+
+        public FormValidation doCheckHostPattern(@QueryParameter String value) {
+            return FormValidation.validateRequired(value);
+        }
+
+        public FormValidation doCheckMaxConcurrentRequests(@QueryParameter int value) {
+            if (value < 1) {
+                return FormValidation.error("At least one request must be allowed");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckMaxWaitSeconds(@QueryParameter int value) {
+            if (value < 0) {
+                return FormValidation.error("Max wait must not be negative");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.entity.DeflateInputStreamFactory;
+import org.apache.hc.client5.http.entity.GZIPInputStreamFactory;
+import org.apache.hc.client5.http.entity.InputStreamFactory;
+import org.brotli.dec.BrotliInputStream;
+
+/**
+ * The decoders of the content encodings accepted for response bodies, by {@code Content-Encoding}
+ * token, in the order they are advertised in {@code Accept-Encoding}.
+ * <p>
+ * The encodings are fixed: requests may execute on an agent, where extensions of the controller
+ * cannot be looked up.
+ */
+public final class ContentDecoders {
+
+    private static final Map<String, InputStreamFactory> DECODERS;
+
+    static {
+        Map<String, InputStreamFactory> decoders = new LinkedHashMap<>();
+        decoders.put("gzip", GZIPInputStreamFactory.getInstance());
+        decoders.put("x-gzip", GZIPInputStreamFactory.getInstance());
+        decoders.put("deflate", DeflateInputStreamFactory.getInstance());
+        decoders.put("br", BrotliInputStream::new);
+        DECODERS = Collections.unmodifiableMap(decoders);
+    }
+
+    private ContentDecoders() {
+    }
+
+    /**
+     * The decoders for a client, counting the bytes going through them in {@code counter}.
+     */
+    public static LinkedHashMap<String, InputStreamFactory> registry(Counter counter) {
+        LinkedHashMap<String, InputStreamFactory> registry = new LinkedHashMap<>();
+        DECODERS.forEach((encoding, decoder) -> registry.put(encoding, in -> {
+            Body body = new Body(encoding);
+            counter.last = body;
+            return new CountingInputStream(decoder.create(new CountingInputStream(in, body.encodedBytes)), body.decodedBytes);
+        }));
+        return registry;
+    }
+
+    /**
+     * Decodes a body read whole, for clients that do not decode bodies themselves.
+     *
+     * @return the decoded body, or {@code null} when {@code encoding} is not supported
+     */
+    public static byte[] decode(String encoding, byte[] body, Counter counter) throws IOException {
+        InputStreamFactory decoder = registry(counter).get(encoding.trim().toLowerCase(Locale.ENGLISH));
+        if (decoder == null) {
+            return null;
+        }
+        try (InputStream in = decoder.create(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Sizes of the body of the last response received by a client, whatever retries, redirects or
+     * other exchanges came before it.
+     */
+    public static final class Counter {
+        private volatile Body last;
+
+        /**
+         * Forgets the bodies decoded so far, as a new response was received.
+         */
+        public void reset() {
+            last = null;
+        }
+
+        /**
+         * The encoding of the last body decoded, or {@code null} when it was not encoded.
+         */
+        public String getEncoding() {
+            Body body = last;
+            return body != null ? body.encoding : null;
+        }
+
+        public long getEncodedBytes() {
+            Body body = last;
+            return body != null ? body.encodedBytes.get() : 0;
+        }
+
+        public long getDecodedBytes() {
+            Body body = last;
+            return body != null ? body.decodedBytes.get() : 0;
+        }
+    }
+
+    /**
+     * What went through the decoder of one body, which earlier bodies still drained keep counting in.
+     */
+    private static final class Body {
+        private final String encoding;
+        private final AtomicLong encodedBytes = new AtomicLong();
+        private final AtomicLong decodedBytes = new AtomicLong();
+
+        private Body(String encoding) {
+            this.encoding = encoding;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+
+        private CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Looks for a byte sequence in a stream as it is read, using Knuth-Morris-Pratt so matches spanning
+ * read boundaries are found without buffering the content.
+ */
+public final class ContentMatcher {
+
+    private final byte[] pattern;
+    private final int[] fallback;
+    private int matched;
+    private boolean found;
+
+    public ContentMatcher(byte[] pattern) {
+        this.pattern = pattern.clone();
+        this.fallback = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = fallback[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            fallback[i] = k;
+        }
+        this.found = pattern.length == 0;
+    }
+
+    public void update(byte[] b, int off, int len) {
+        for (int i = off; i < off + len && !found; i++) {
+            update(b[i]);
+        }
+    }
+
+    public void update(byte b) {
+        if (found) {
+            return;
+        }
+        while (matched > 0 && b != pattern[matched]) {
+            matched = fallback[matched - 1];
+        }
+        if (b == pattern[matched]) {
+            matched++;
+        }
+        if (matched == pattern.length) {
+            found = true;
+        }
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    /**
+     * Wraps {@code in} so every byte read through it is fed to this matcher.
+     */
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    update((byte) b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    update(b, off, n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // skipped bytes must still be matched
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                long skipped = 0;
+                while (skipped < n) {
+                    int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                    if (read < 0) {
+                        break;
+                    }
+                    skipped += read;
+                }
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+}
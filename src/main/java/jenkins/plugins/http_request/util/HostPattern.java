@@ -0,0 +1,51 @@
+package jenkins.plugins.http_request.util;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Matches hosts against patterns like {@code *.example.com} or {@code api.example.com:8443}, where
+ * {@code *} matches any characters and an optional port follows the host.
+ */
+final class HostPattern {
+
+    private final Pattern regex;
+
+    private HostPattern(Pattern regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * Compiles {@code pattern} once, for all the hosts it is matched against.
+     *
+     * @return the compiled pattern, or {@code null} when {@code pattern} is blank and matches nothing
+     */
+    static HostPattern compile(String pattern) {
+        if (pattern == null || pattern.isBlank()) {
+            return null;
+        }
+        return new HostPattern(toRegex(pattern.trim()));
+    }
+
+    /**
+     * Whether the pattern matches {@code host}, or {@code host:port} when the URL names a port.
+     */
+    boolean matches(String host, int port) {
+        if (host == null) {
+            return false;
+        }
+        String name = host.toLowerCase(Locale.ENGLISH);
+        return regex.matcher(name).matches() || port != -1 && regex.matcher(name + ":" + port).matches();
+    }
+
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : glob.toLowerCase(Locale.ENGLISH).split("\\*", -1)) {
+            if (!regex.isEmpty()) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,145 @@
+package jenkins.plugins.http_request.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.io.ModalCloseable;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.TimeValue;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps the pooled connection managers alive between requests executed in the same JVM
+ * (the controller or an agent), so keep-alive connections are reused instead of paying
+ * a new TCP connect and TLS handshake on every call.
+ * <p>
+ * Classic clients are still built per request, because authenticators attach per request state
+ * to the builder, but they share the pool registered here for their configuration.
+ * Async clients own their I/O reactor, so they are shared as a whole and per request state goes
+ * into the execution context instead.
+ * Idle connections are evicted, and pools that have not been used for a while are closed.
+ */
+public final class HttpClientRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpClientRegistry.class.getName());
+
+    static final int MAX_TOTAL = SystemProperties.getInteger(HttpClientRegistry.class.getName() + ".maxTotal", 200);
+    static final int MAX_PER_ROUTE = SystemProperties.getInteger(HttpClientRegistry.class.getName() + ".maxPerRoute", 50);
+    static final long IDLE_SECONDS = SystemProperties.getLong(HttpClientRegistry.class.getName() + ".idleSeconds", 60L);
+    private static final long UNUSED_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long SWEEP_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final Map<Key, Pool<PoolingHttpClientConnectionManager>> POOLS = new ConcurrentHashMap<>();
+    private static final Map<Key, Pool<CloseableHttpAsyncClient>> ASYNC_CLIENTS = new ConcurrentHashMap<>();
+    private static final AtomicLong LAST_SWEEP = new AtomicLong();
+
+    private HttpClientRegistry() {
+    }
+
+    /**
+     * Identity of a pool: requests only share connections when all of these match.
+     *
+     * @param tls TLS mode, e.g. default trust or ignoring SSL errors
+     * @param proxy proxy URI or an empty string
+     * @param timeout timeout in seconds, 0 or less meaning no timeout
+     * @param authenticator authenticator identity or an empty string
+     */
+    public record Key(String tls, String proxy, int timeout, String authenticator) {
+    }
+
+    /**
+     * Returns the shared connection manager for the given key, creating it with
+     * {@code factory} on first use. Clients built on it must be marked with
+     * {@code setConnectionManagerShared(true)} so closing them keeps the pool open.
+     */
+    public static PoolingHttpClientConnectionManager connectionManager(
+            Key key, Supplier<PoolingHttpClientConnectionManager> factory) {
+        return acquire(POOLS, key, () -> {
+            PoolingHttpClientConnectionManager connectionManager = factory.get();
+            return new Pool<>(connectionManager, connectionManager, connectionManager);
+        });
+    }
+
+    /**
+     * Returns the shared, started async client for the given key, creating it on first use.
+     * Callers must not close it.
+     */
+    public static CloseableHttpAsyncClient asyncClient(
+            Key key, Supplier<PoolingAsyncClientConnectionManager> connectionManagerFactory,
+            Function<PoolingAsyncClientConnectionManager, CloseableHttpAsyncClient> clientFactory) {
+        return acquire(ASYNC_CLIENTS, key, () -> {
+            PoolingAsyncClientConnectionManager connectionManager = connectionManagerFactory.get();
+            CloseableHttpAsyncClient client = clientFactory.apply(connectionManager);
+            client.start();
+            return new Pool<>(client, connectionManager, client);
+        });
+    }
+
+    private static <T> T acquire(Map<Key, Pool<T>> pools, Key key, Supplier<Pool<T>> factory) {
+        sweep();
+        return pools.compute(key, (k, pool) -> {
+            if (pool == null) {
+                pool = factory.get();
+                pool.control.setMaxTotal(MAX_TOTAL);
+                pool.control.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+            }
+            pool.lastUsed = System.currentTimeMillis();
+            return pool;
+        }).resource;
+    }
+
+    private static void sweep() {
+        long now = System.currentTimeMillis();
+        long last = LAST_SWEEP.get();
+        if (now - last < SWEEP_MILLIS || !LAST_SWEEP.compareAndSet(last, now)) {
+            return;
+        }
+        sweep(POOLS, now);
+        sweep(ASYNC_CLIENTS, now);
+    }
+
+    private static <T> void sweep(Map<Key, Pool<T>> pools, long now) {
+        for (Key key : pools.keySet()) {
+            Object[] removed = new Object[1];
+            pools.computeIfPresent(key, (k, pool) -> {
+                pool.control.closeExpired();
+                pool.control.closeIdle(TimeValue.ofSeconds(IDLE_SECONDS));
+                if (now - pool.lastUsed > UNUSED_MILLIS && pool.control.getTotalStats().getLeased() == 0
+                        && pool.control.getTotalStats().getPending() == 0) {
+                    removed[0] = pool;
+                    return null;
+                }
+                return pool;
+            });
+            if (removed[0] instanceof Pool<?> pool) {
+                LOGGER.log(Level.FINE, "Closing unused connection pool {0}", key);
+                pool.closeable.close(CloseMode.GRACEFUL);
+            }
+        }
+    }
+
+    private static final class Pool<T> {
+        private final T resource;
+        private final ConnPoolControl<HttpRoute> control;
+        private final ModalCloseable closeable;
+        private volatile long lastUsed;
+
+        private Pool(T resource, ConnPoolControl<HttpRoute> control, ModalCloseable closeable) {
+            this.resource = resource;
+            this.control = control;
+            this.closeable = closeable;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+/**
+ * Writes a response body to a local file through a temporary file in the same directory, which
+ * replaces the target only once the whole body has been written. A failed or rejected download
+ * never leaves a truncated file behind.
+ * <p>
+ * A symbolic link is written through: the file it points to is the one replaced, and the link is
+ * kept. The replaced file keeps its POSIX permissions and, where the user may set them, its owner
+ * and group.
+ */
+public final class OutputFileWriter implements AutoCloseable {
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The number of links followed before giving up, as {@code MAXSYMLINKS} of Linux.
+     */
+    private static final int MAX_LINKS = 40;
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private long position;
+    private boolean committed;
+
+    private OutputFileWriter(Path target, Path temp, FileChannel channel) {
+        this.target = target;
+        this.temp = temp;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the temporary file for {@code target}.
+     */
+    public static OutputFileWriter open(Path target) throws IOException {
+        // next to the file a link points to, so it can be moved there atomically
+        Path resolved = resolve(target);
+        Path parent = resolved.getParent();
+        Files.createDirectories(parent);
+        // not Files.createTempFile, which would restrict the permissions the target ends up with
+        Path temp = parent.resolve("." + resolved.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new OutputFileWriter(resolved, temp, channel);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * The file {@code target} stands for once its symbolic links are followed, including a link to a
+     * file that does not exist yet.
+     */
+    private static Path resolve(Path target) throws IOException {
+        Path path = target.toAbsolutePath();
+        if (Files.exists(path)) {
+            return path.toRealPath();
+        }
+        for (int links = 0; Files.isSymbolicLink(path); links++) {
+            if (links == MAX_LINKS) {
+                throw new FileSystemException(target.toString(), null, "Too many levels of symbolic links");
+            }
+            path = path.resolveSibling(Files.readSymbolicLink(path));
+        }
+        return path;
+    }
+
+    /**
+     * Gives the temporary file the owner, group and permissions of the file it replaces.
+     */
+    private void copyAttributes() throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        if (view == null || !Files.exists(target)) {
+            return;
+        }
+        PosixFileAttributes attributes = Files.readAttributes(target, PosixFileAttributes.class);
+        try {
+            view.setOwner(attributes.owner());
+            view.setGroup(attributes.group());
+        } catch (FileSystemException e) {
+            // only a privileged user may give a file away, the file then belongs to the user downloading it
+        }
+        // after the owner, as changing it may clear the setuid and setgid bits
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     * Copies {@code in} to the temporary file after the bytes already written, returning the total
+     * number of bytes written. When reading fails, what was read so far is kept, so the copy can
+     * go on from {@link #position()} with the rest of the body.
+     */
+    public long copy(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        int read;
+        while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+            byteBuffer.clear().limit(read);
+            while (byteBuffer.hasRemaining()) {
+                position += channel.write(byteBuffer, position);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Copies {@code in} to the temporary file starting at {@code offset}, returning the number of
+     * bytes written. Unlike {@link #copy}, this can be called concurrently for distinct ranges.
+     */
+    public long write(long offset, InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long written = 0;
+        int read;
+        while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+            byteBuffer.clear().limit(read);
+            while (byteBuffer.hasRemaining()) {
+                written += channel.write(byteBuffer, offset + written);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Feeds the whole temporary file to {@code digest}.
+     */
+    public void digest(MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long offset = 0;
+        try (FileChannel in = FileChannel.open(temp, StandardOpenOption.READ)) {
+            int read;
+            while ((read = in.read(buffer.clear(), offset)) > 0) {
+                digest.update(buffer.flip());
+                offset += read;
+            }
+        }
+    }
+
+    /**
+     * The number of bytes written so far.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Moves the written file in place of the target, or of the file the target links to.
+     */
+    public void commit() throws IOException {
+        channel.close();
+        copyAttributes();
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * Discards the temporary file unless it was committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
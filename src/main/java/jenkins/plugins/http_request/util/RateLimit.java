@@ -0,0 +1,146 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+/**
+ * The most requests per second sent to the hosts matching a pattern, or with an authentication,
+ * configured globally and enforced by {@link RateLimiter} on the controller.
+ * <p>
+ * When both a host pattern and an authentication are set, the limit applies to the requests
+ * matching both.
+ */
+public class RateLimit extends AbstractDescribableImpl<RateLimit> implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final double requestsPerSecond;
+    private String hostPattern;
+    private String authentication;
+    private int burst = DescriptorImpl.burst;
+    private int maxWaitSeconds = DescriptorImpl.maxWaitSeconds;
+    @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
+    private transient volatile HostPattern compiledHostPattern;
+
+    @DataBoundConstructor
+    public RateLimit(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public String getHostPattern() {
+        return hostPattern;
+    }
+
+    @DataBoundSetter
+    public void setHostPattern(String hostPattern) {
+        this.hostPattern = Util.fixEmptyAndTrim(hostPattern);
+        this.compiledHostPattern = null;
+    }
+
+    public String getAuthentication() {
+        return authentication;
+    }
+
+    @DataBoundSetter
+    public void setAuthentication(String authentication) {
+        this.authentication = Util.fixEmptyAndTrim(authentication);
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    @DataBoundSetter
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    public int getMaxWaitSeconds() {
+        return maxWaitSeconds;
+    }
+
+    @DataBoundSetter
+    public void setMaxWaitSeconds(int maxWaitSeconds) {
+        this.maxWaitSeconds = maxWaitSeconds;
+    }
+
+    /**
+     * Whether the limit applies to a request to {@code host} and {@code port} with {@code authentication}.
+     */
+    public boolean matches(String host, int port, String authentication) {
+        if (hostPattern == null && this.authentication == null) {
+            return false;
+        }
+        return (hostPattern == null || matchesHost(host, port))
+                && (this.authentication == null || this.authentication.equals(authentication));
+    }
+
+    private boolean matchesHost(String host, int port) {
+        HostPattern pattern = compiledHostPattern;
+        if (pattern == null) {
+            pattern = HostPattern.compile(hostPattern);
+            compiledHostPattern = pattern;
+        }
+        return pattern != null && pattern.matches(host, port);
+    }
+
+    /**
+     * What the limit applies to, for the messages of the build and the bucket it shares.
+     */
+    public String getScope() {
+        if (authentication == null) {
+            return hostPattern;
+        }
+        return hostPattern == null ? "authentication " + authentication : hostPattern + " with authentication " + authentication;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<RateLimit> {
+        public static final int burst = 1;
+        public static final int maxWaitSeconds = 60;
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Rate limit";
+        }
+
+        public FormValidation doCheckRequestsPerSecond(@QueryParameter double value) {
+            if (value <= 0) {
+                return FormValidation.error("Requests per second must be positive");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckBurst(@QueryParameter int value) {
+            if (value < 1) {
+                return FormValidation.error("Burst must be at least 1");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckMaxWaitSeconds(@QueryParameter int value) {
+            if (value < 0) {
+                return FormValidation.error("Max wait must not be negative");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import hudson.AbortException;
+import hudson.remoting.Channel;
+
+/**
+ * Token buckets enforcing the {@link RateLimit}s, one per scope.
+ * <p>
+ * The buckets live on the controller. Requests executed on an agent take their tokens through the
+ * channel, so a limit holds for all executors whatever node they run on, and wait for them on the agent,
+ * where interrupting the build stops the wait.
+ */
+public final class RateLimiter {
+
+    private static final Map<String, TokenBucket> BUCKETS = new ConcurrentHashMap<>();
+
+    private RateLimiter() {
+    }
+
+    /**
+     * Reserves the tokens of a request.
+     */
+    public interface Throttle {
+        /**
+         * Takes a token from every bucket of the request, without waiting for the last one to be refilled.
+         *
+         * @return how long the request must wait before it is sent, in nanoseconds
+         * @throws AbortException when the wait would be longer than a limit allows
+         */
+        long reserve() throws IOException;
+    }
+
+    /**
+     * Takes the tokens of a request from {@code throttle} and waits for them on the calling thread.
+     *
+     * @return how long the request waited, in milliseconds
+     * @throws AbortException when the wait would be longer than a limit allows
+     */
+    public static long acquire(Throttle throttle) throws IOException, InterruptedException {
+        long waitNanos = throttle.reserve();
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+    /**
+     * The throttle of a request subject to {@code limits}, or {@code null} when there are none.
+     * Must be called on the controller.
+     */
+    public static Throttle throttle(List<RateLimit> limits) {
+        return limits.isEmpty() ? null : new ControllerThrottle(new ArrayList<>(limits));
+    }
+
+    private static TokenBucket bucket(RateLimit limit) {
+        return BUCKETS.compute(limit.getScope(), (scope, bucket) ->
+                bucket != null && bucket.rate == limit.getRequestsPerSecond() && bucket.burst == Math.max(limit.getBurst(), 1)
+                        ? bucket : new TokenBucket(limit.getRequestsPerSecond(), limit.getBurst()));
+    }
+
+    private static final class ControllerThrottle implements Throttle, Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final List<RateLimit> limits;
+
+        private ControllerThrottle(List<RateLimit> limits) {
+            this.limits = limits;
+        }
+
+        @Override
+        public long reserve() throws IOException {
+            List<TokenBucket> reserved = new ArrayList<>(limits.size());
+            long waitNanos = 0;
+            for (RateLimit limit : limits) {
+                TokenBucket bucket = bucket(limit);
+                long wait = bucket.reserve(TimeUnit.SECONDS.toNanos(Math.max(limit.getMaxWaitSeconds(), 0)));
+                if (wait < 0) {
+                    reserved.forEach(TokenBucket::refund);
+                    throw new AbortException("Fail: rate limit of " + limit.getRequestsPerSecond() + " requests/s for "
+                            + limit.getScope() + " would delay the request by more than " + limit.getMaxWaitSeconds() + "s");
+                }
+                reserved.add(bucket);
+                waitNanos = Math.max(waitNanos, wait);
+            }
+            return waitNanos;
+        }
+
+        /**
+         * Sent to an agent, the throttle keeps taking its tokens from the buckets of the controller.
+         */
+        @Serial
+        private Object writeReplace() {
+            Channel channel = Channel.current();
+            return channel != null ? channel.export(Throttle.class, this) : this;
+        }
+    }
+
+    /**
+     * Holds up to {@code burst} tokens, refilled at {@code rate} per second. A request that finds no
+     * token takes one ahead, waiting for its refill, so requests are served in arrival order.
+     */
+    private static final class TokenBucket {
+        private final double rate;
+        private final int burst;
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double rate, int burst) {
+            this.rate = rate;
+            this.burst = Math.max(burst, 1);
+            this.tokens = this.burst;
+            this.refilledAt = System.nanoTime();
+        }
+
+        /**
+         * Takes a token, returning how long to wait for it, or {@code -1} without taking it when the
+         * wait would exceed {@code maxWaitNanos}.
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+            double missing = 1 - tokens;
+            long wait = missing <= 0 ? 0 : (long) Math.ceil(missing / rate * TimeUnit.SECONDS.toNanos(1));
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return wait;
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(burst, tokens + 1);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * A SHA-256 digest of the parts of a request, so a key can stand for secrets without holding them.
+ * <p>
+ * Serializable parts, like authenticators and the credentials snapshots they carry, are digested in
+ * their serialized form, which covers their secrets. A part that cannot be serialized makes the
+ * fingerprint unique, so nothing keyed on it is ever shared.
+ */
+public final class RequestFingerprint {
+
+    private RequestFingerprint() {
+    }
+
+    public static String of(Object... parts) {
+        MessageDigest digest = sha256();
+        for (Object part : parts) {
+            // separates the parts, so ("ab", "c") and ("a", "bc") differ
+            digest.update((byte) 0);
+            if (part instanceof Serializable && !(part instanceof String || part instanceof Number
+                    || part instanceof Boolean || part instanceof Enum)) {
+                try (ObjectOutputStream out = new ObjectOutputStream(new DigestingStream(digest))) {
+                    out.writeObject(part);
+                } catch (IOException e) {
+                    digest.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+                }
+            } else {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class DigestingStream extends OutputStream {
+        private final MessageDigest digest;
+
+        private DigestingStream(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * A private HTTP cache for GET requests, kept in memory on the JVM executing them.
+ * <p>
+ * Freshness follows {@code Cache-Control: max-age} or {@code Expires}, without heuristic freshness.
+ * Stale entries with an {@code ETag} or {@code Last-Modified} validator are revalidated with a
+ * conditional request. Entries are keyed by the URL, every request header and a fingerprint of the
+ * credentials, proxy and TLS settings, so a response is only ever served to requests identical to the
+ * one that fetched it, which also covers any {@code Vary} header. The cache is shared by every job
+ * running on the JVM: responses marked {@code private}, and responses to authenticated requests not
+ * marked {@code public}, are not stored.
+ * <p>
+ * Entries evicted from memory move to files in a directory of this JVM, up to {@link #MAX_DISK_BYTES},
+ * and back to memory when they are used again.
+ */
+public final class ResponseCache {
+
+    static final int MAX_ENTRY_BYTES = SystemProperties.getInteger(ResponseCache.class.getName() + ".maxEntryBytes", 1024 * 1024);
+    /**
+     * The bytes of bodies kept in memory. Read on every store, so it can be changed at run time.
+     */
+    static final String MAX_TOTAL_BYTES_PROPERTY = ResponseCache.class.getName() + ".maxTotalBytes";
+
+    static final long MAX_DISK_BYTES = SystemProperties.getLong(ResponseCache.class.getName() + ".maxDiskBytes", 256L * 1024 * 1024);
+
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class.getName());
+
+    /**
+     * Directories of JVMs that did not shut down cleanly are removed after this many hours.
+     */
+    private static final long DIRECTORY_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * Guards the maps and counters below. Files are only read, written and deleted outside of it, so a
+     * slow disk holds up the requests using it rather than every cached request.
+     */
+    private static final Object LOCK = new Object();
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalBytes;
+    private static final Map<String, DiskEntry> ON_DISK = new LinkedHashMap<>(16, 0.75f, true);
+    private static long diskBytes;
+    /**
+     * Entries evicted from memory and being written to disk, by key. They are only published on disk if
+     * their key was neither stored again nor removed meanwhile.
+     */
+    private static final Map<String, Object> WRITING = new HashMap<>();
+    private static final AtomicLong FILES = new AtomicLong();
+    private static Path directory;
+
+    private ResponseCache() {
+    }
+
+    /**
+     * Builds the cache key of a request, a digest that does not reveal the headers it covers.
+     *
+     * @param fingerprint a {@link RequestFingerprint} of the credentials and settings of the request
+     */
+    public static String key(String url, List<HttpRequestNameValuePair> headers, String fingerprint) {
+        Map<String, List<String>> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (HttpRequestNameValuePair header : headers) {
+            sorted.computeIfAbsent(header.getName(), k -> new ArrayList<>()).add(header.getValue());
+        }
+        return RequestFingerprint.of(url, fingerprint, sorted.toString());
+    }
+
+    /**
+     * Whether the request carries credentials of its own, in an {@code Authorization} header.
+     */
+    public static boolean isAuthorized(List<HttpRequestNameValuePair> headers) {
+        for (HttpRequestNameValuePair header : headers) {
+            if (HttpHeaders.AUTHORIZATION.equalsIgnoreCase(header.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the request asks not to use the cache at all, or makes its own conditional or range
+     * request whose response is for the caller to interpret.
+     */
+    public static boolean isBypassed(List<HttpRequestNameValuePair> headers) {
+        for (HttpRequestNameValuePair header : headers) {
+            String name = header.getName();
+            if (HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name) || HttpHeaders.IF_MODIFIED_SINCE.equalsIgnoreCase(name)
+                    || HttpHeaders.IF_MATCH.equalsIgnoreCase(name) || HttpHeaders.IF_UNMODIFIED_SINCE.equalsIgnoreCase(name)
+                    || HttpHeaders.RANGE.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return requestDirective(headers, "no-store");
+    }
+
+    /**
+     * Whether the request asks to revalidate even a fresh entry.
+     */
+    public static boolean isRevalidationRequired(List<HttpRequestNameValuePair> headers) {
+        return requestDirective(headers, "no-cache");
+    }
+
+    private static boolean requestDirective(List<HttpRequestNameValuePair> headers, String directive) {
+        for (HttpRequestNameValuePair header : headers) {
+            if (HttpHeaders.CACHE_CONTROL.equalsIgnoreCase(header.getName())
+                    && directives(header.getValue()).containsKey(directive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static Entry get(String key) {
+        DiskEntry onDisk;
+        synchronized (LOCK) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            onDisk = ON_DISK.remove(key);
+            if (onDisk == null) {
+                return null;
+            }
+            // taken off the disk index, concurrent lookups miss until it is back in memory
+            diskBytes -= onDisk.size;
+        }
+        Entry entry = readFromDisk(onDisk.file);
+        deleteFile(onDisk.file);
+        if (entry != null) {
+            put(key, entry);
+        }
+        return entry;
+    }
+
+    public static void put(String key, Entry entry) {
+        long maxTotalBytes = SystemProperties.getLong(MAX_TOTAL_BYTES_PROPERTY, 64L * 1024 * 1024);
+        Map<String, Entry> evicted = new LinkedHashMap<>();
+        Map<String, Object> tokens = new HashMap<>();
+        DiskEntry stale;
+        synchronized (LOCK) {
+            stale = removeFromDisk(key);
+            Entry previous = ENTRIES.put(key, entry);
+            if (previous != null) {
+                totalBytes -= previous.body.length;
+            }
+            totalBytes += entry.body.length;
+            Iterator<Map.Entry<String, Entry>> eldest = ENTRIES.entrySet().iterator();
+            while (totalBytes > maxTotalBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> next = eldest.next();
+                totalBytes -= next.getValue().body.length;
+                evicted.put(next.getKey(), next.getValue());
+                Object token = new Object();
+                WRITING.put(next.getKey(), token);
+                tokens.put(next.getKey(), token);
+                eldest.remove();
+            }
+        }
+        if (stale != null) {
+            deleteFile(stale.file);
+        }
+        evicted.forEach((evictedKey, evictedEntry) -> writeToDisk(evictedKey, evictedEntry, tokens.get(evictedKey)));
+    }
+
+    public static void remove(String key) {
+        DiskEntry stale;
+        synchronized (LOCK) {
+            Entry previous = ENTRIES.remove(key);
+            if (previous != null) {
+                totalBytes -= previous.body.length;
+            }
+            stale = removeFromDisk(key);
+        }
+        if (stale != null) {
+            deleteFile(stale.file);
+        }
+    }
+
+    /**
+     * Drops {@code key} from the disk index, and any write of it in progress, under {@link #LOCK}.
+     *
+     * @return the file to delete, if any
+     */
+    private static DiskEntry removeFromDisk(String key) {
+        WRITING.remove(key);
+        DiskEntry previous = ON_DISK.remove(key);
+        if (previous != null) {
+            diskBytes -= previous.size;
+        }
+        return previous;
+    }
+
+    private static void writeToDisk(String key, Entry entry, Object token) {
+        if (MAX_DISK_BYTES <= 0 || entry.body.length > MAX_DISK_BYTES) {
+            synchronized (LOCK) {
+                WRITING.remove(key, token);
+            }
+            return;
+        }
+        Path file = null;
+        try {
+            // a file of its own, so a write never overwrites a file being read
+            file = directory().resolve(key + '-' + FILES.incrementAndGet());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeLong(entry.storedAt);
+                out.writeLong(entry.lifetime);
+                out.writeInt(entry.headers.length);
+                for (Header header : entry.headers) {
+                    out.writeUTF(header.getName());
+                    out.writeUTF(header.getValue());
+                }
+                out.writeInt(entry.body.length);
+                out.write(entry.body);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not move a cached response to disk", e);
+            synchronized (LOCK) {
+                WRITING.remove(key, token);
+            }
+            if (file != null) {
+                deleteFile(file);
+            }
+            return;
+        }
+        long size = file.toFile().length();
+        List<Path> deleted = new ArrayList<>();
+        synchronized (LOCK) {
+            if (!WRITING.remove(key, token)) {
+                // stored again or removed meanwhile, this copy is outdated
+                deleted.add(file);
+            } else {
+                ON_DISK.put(key, new DiskEntry(file, size));
+                diskBytes += size;
+                Iterator<DiskEntry> eldest = ON_DISK.values().iterator();
+                while (diskBytes > MAX_DISK_BYTES && eldest.hasNext()) {
+                    DiskEntry evicted = eldest.next();
+                    eldest.remove();
+                    diskBytes -= evicted.size;
+                    deleted.add(evicted.file);
+                }
+            }
+        }
+        deleted.forEach(ResponseCache::deleteFile);
+    }
+
+    private static Entry readFromDisk(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long storedAt = in.readLong();
+            long lifetime = in.readLong();
+            Header[] headers = new Header[in.readInt()];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(headers, body, storedAt, lifetime);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not read a cached response from disk", e);
+            return null;
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not delete a cached response from disk", e);
+        }
+    }
+
+    /**
+     * A response moved to disk.
+     */
+    private static final class DiskEntry {
+        private final Path file;
+        private final long size;
+
+        private DiskEntry(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The directory of this JVM, removed when it shuts down. Those left behind by JVMs that did not are
+     * removed once old enough.
+     */
+    private static synchronized Path directory() throws IOException {
+        if (directory == null) {
+            Path parent = Files.createDirectories(Paths.get(System.getProperty("java.io.tmpdir"), "http_request-cache"));
+            try (DirectoryStream<Path> directories = Files.newDirectoryStream(parent)) {
+                long expired = System.currentTimeMillis() - DIRECTORY_RETENTION_MILLIS;
+                for (Path stale : directories) {
+                    if (Files.getLastModifiedTime(stale).toMillis() < expired) {
+                        FileUtils.deleteQuietly(stale.toFile());
+                    }
+                }
+            }
+            Path created = Files.createTempDirectory(parent, "jvm");
+            File toDelete = created.toFile();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(toDelete), "http_request cache cleanup"));
+            directory = created;
+        }
+        return directory;
+    }
+
+    /**
+     * Stores {@code response} under {@code key} when it is storable and its body small enough.
+     * The entity of the response is replaced, so the body is still readable by the caller.
+     *
+     * @param authenticated whether the request was sent with credentials
+     * @return whether the response was stored
+     */
+    public static boolean store(String key, ClassicHttpResponse response, boolean authenticated) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || !isStorable(response, authenticated)) {
+            remove(key);
+            return false;
+        }
+        InputStream in = entity.getContent();
+        byte[] head = in.readNBytes(MAX_ENTRY_BYTES + 1);
+        ContentType contentType = ContentType.parseLenient(entity.getContentType());
+        if (head.length <= MAX_ENTRY_BYTES) {
+            put(key, Entry.of(response, head));
+            response.setEntity(new ByteArrayEntity(head, contentType, entity.getContentEncoding()));
+            return true;
+        }
+        remove(key);
+        response.setEntity(new InputStreamEntity(new SequenceInputStream(new ByteArrayInputStream(head), in),
+                entity.getContentLength(), contentType, entity.getContentEncoding()));
+        return false;
+    }
+
+    /**
+     * Whether a response may be stored by this shared cache, before looking at its body.
+     *
+     * @param authenticated whether the request was sent with credentials
+     */
+    public static boolean isStorable(HttpResponse response, boolean authenticated) {
+        if (response.getCode() != HttpStatus.SC_OK) {
+            return false;
+        }
+        Header vary = response.getFirstHeader(HttpHeaders.VARY);
+        if (vary != null && vary.getValue().trim().equals("*")) {
+            return false;
+        }
+        Map<String, String> directives = directives(response.getHeaders(HttpHeaders.CACHE_CONTROL));
+        if (directives.containsKey("no-store") || directives.containsKey("private")) {
+            return false;
+        }
+        if (authenticated && !directives.containsKey("public")) {
+            return false;
+        }
+        return freshnessLifetime(response) > 0
+                || response.containsHeader(HttpHeaders.ETAG) || response.containsHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    private static long freshnessLifetime(HttpResponse response) {
+        Map<String, String> directives = directives(response.getHeaders(HttpHeaders.CACHE_CONTROL));
+        if (directives.containsKey("no-cache")) {
+            return 0;
+        }
+        long lifetime = 0;
+        if (directives.containsKey("s-maxage")) {
+            // the lifetime for shared caches, like this one
+            lifetime = TimeUnit.SECONDS.toMillis(parseSeconds(directives.get("s-maxage")));
+        } else if (directives.containsKey("max-age")) {
+            lifetime = TimeUnit.SECONDS.toMillis(parseSeconds(directives.get("max-age")));
+        } else {
+            Header expires = response.getFirstHeader(HttpHeaders.EXPIRES);
+            Header date = response.getFirstHeader(HttpHeaders.DATE);
+            if (expires != null) {
+                Instant expiresAt = DateUtils.parseStandardDate(expires.getValue());
+                Instant dateAt = date != null ? DateUtils.parseStandardDate(date.getValue()) : null;
+                if (expiresAt != null) {
+                    lifetime = expiresAt.toEpochMilli() - (dateAt != null ? dateAt.toEpochMilli() : System.currentTimeMillis());
+                }
+            }
+        }
+        Header age = response.getFirstHeader(HttpHeaders.AGE);
+        if (age != null) {
+            lifetime -= TimeUnit.SECONDS.toMillis(parseSeconds(age.getValue()));
+        }
+        return Math.max(lifetime, 0);
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(Long.parseLong(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, String> directives(Header[] headers) {
+        Map<String, String> directives = new TreeMap<>();
+        for (Header header : headers) {
+            directives.putAll(directives(header.getValue()));
+        }
+        return directives;
+    }
+
+    private static Map<String, String> directives(String value) {
+        Map<String, String> directives = new TreeMap<>();
+        for (String directive : value.split(",")) {
+            String[] nameValue = directive.split("=", 2);
+            String name = nameValue[0].trim().toLowerCase(Locale.ENGLISH);
+            if (!name.isEmpty()) {
+                directives.put(name, nameValue.length > 1 ? nameValue[1].trim().replace("\"", "") : null);
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * A stored response.
+     */
+    public static final class Entry {
+        private final Header[] headers;
+        private final byte[] body;
+        private final long storedAt;
+        private final long lifetime;
+
+        private Entry(Header[] headers, byte[] body, long lifetime) {
+            this(headers, body, System.currentTimeMillis(), lifetime);
+        }
+
+        private Entry(Header[] headers, byte[] body, long storedAt, long lifetime) {
+            this.headers = headers;
+            this.body = body;
+            this.storedAt = storedAt;
+            this.lifetime = lifetime;
+        }
+
+        public static Entry of(HttpResponse response, byte[] body) {
+            return new Entry(response.getHeaders(), body.clone(), freshnessLifetime(response));
+        }
+
+        /**
+         * The entry refreshed with the headers of a {@code 304 Not Modified} response.
+         */
+        public Entry revalidated(HttpResponse notModified) {
+            Map<String, List<Header>> merged = new LinkedHashMap<>();
+            for (Header header : headers) {
+                merged.computeIfAbsent(header.getName().toLowerCase(Locale.ENGLISH), k -> new ArrayList<>()).add(header);
+            }
+            Map<String, List<Header>> updates = new LinkedHashMap<>();
+            for (Header header : notModified.getHeaders()) {
+                updates.computeIfAbsent(header.getName().toLowerCase(Locale.ENGLISH), k -> new ArrayList<>()).add(header);
+            }
+            // the stored representation keeps its own length and encoding
+            updates.remove(HttpHeaders.CONTENT_LENGTH.toLowerCase(Locale.ENGLISH));
+            updates.remove(HttpHeaders.TRANSFER_ENCODING.toLowerCase(Locale.ENGLISH));
+            merged.putAll(updates);
+
+            List<Header> all = new ArrayList<>();
+            merged.values().forEach(all::addAll);
+            Header[] refreshed = all.toArray(new Header[0]);
+            BasicHttpResponse response = new BasicHttpResponse(HttpStatus.SC_OK);
+            response.setHeaders(refreshed);
+            return new Entry(refreshed, body, freshnessLifetime(response));
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() - storedAt < lifetime;
+        }
+
+        public Header[] getHeaders() {
+            return headers.clone();
+        }
+
+        public byte[] getBody() {
+            return body.clone();
+        }
+
+        public String getETag() {
+            return value(HttpHeaders.ETAG);
+        }
+
+        public String getLastModified() {
+            return value(HttpHeaders.LAST_MODIFIED);
+        }
+
+        public boolean hasValidator() {
+            return getETag() != null || getLastModified() != null;
+        }
+
+        private String value(String name) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+    }
+}
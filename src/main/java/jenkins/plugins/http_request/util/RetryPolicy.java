@@ -0,0 +1,223 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+import jenkins.plugins.http_request.HttpMode;
+import jenkins.plugins.http_request.HttpRequest;
+
+/**
+ * When and how long to wait before sending a failed request again.
+ * <p>
+ * Waits grow exponentially from {@link #getBackoffMillis()} up to {@link #getMaxBackoffMillis()},
+ * with a random half of each wait so clients failing together do not retry together.
+ * A {@code Retry-After} header longer than the computed wait is honored.
+ * Requests that may have reached the server are only sent again for idempotent methods,
+ * unless {@link #isRetryNonIdempotent()} is set.
+ */
+public class RetryPolicy extends AbstractDescribableImpl<RetryPolicy> implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final Set<HttpMode> IDEMPOTENT = EnumSet.of(
+            HttpMode.GET, HttpMode.HEAD, HttpMode.PUT, HttpMode.DELETE, HttpMode.OPTIONS);
+    private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final int maxAttempts;
+    private long backoffMillis = DescriptorImpl.backoffMillis;
+    private long maxBackoffMillis = DescriptorImpl.maxBackoffMillis;
+    private String retryOnStatus = DescriptorImpl.retryOnStatus;
+    private boolean retryOnConnectFailure = DescriptorImpl.retryOnConnectFailure;
+    private boolean retryOnReadFailure = DescriptorImpl.retryOnReadFailure;
+    private boolean retryNonIdempotent = DescriptorImpl.retryNonIdempotent;
+    private boolean honorRetryAfter = DescriptorImpl.honorRetryAfter;
+
+    @DataBoundConstructor
+    public RetryPolicy(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    @DataBoundSetter
+    public void setBackoffMillis(long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    @DataBoundSetter
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public String getRetryOnStatus() {
+        return retryOnStatus;
+    }
+
+    @DataBoundSetter
+    public void setRetryOnStatus(String retryOnStatus) {
+        this.retryOnStatus = retryOnStatus;
+    }
+
+    public boolean isRetryOnConnectFailure() {
+        return retryOnConnectFailure;
+    }
+
+    @DataBoundSetter
+    public void setRetryOnConnectFailure(boolean retryOnConnectFailure) {
+        this.retryOnConnectFailure = retryOnConnectFailure;
+    }
+
+    public boolean isRetryOnReadFailure() {
+        return retryOnReadFailure;
+    }
+
+    @DataBoundSetter
+    public void setRetryOnReadFailure(boolean retryOnReadFailure) {
+        this.retryOnReadFailure = retryOnReadFailure;
+    }
+
+    public boolean isRetryNonIdempotent() {
+        return retryNonIdempotent;
+    }
+
+    @DataBoundSetter
+    public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    public boolean isHonorRetryAfter() {
+        return honorRetryAfter;
+    }
+
+    @DataBoundSetter
+    public void setHonorRetryAfter(boolean honorRetryAfter) {
+        this.honorRetryAfter = honorRetryAfter;
+    }
+
+    /**
+     * Whether a response with {@code status} is worth sending the request again.
+     */
+    public boolean isRetryable(int status, HttpMode httpMode) {
+        if (retryOnStatus == null || retryOnStatus.isBlank() || !isReplayable(httpMode)) {
+            return false;
+        }
+        List<IntStream> ranges = HttpRequest.DescriptorImpl.parseToRange(retryOnStatus);
+        return ranges.stream().anyMatch(range -> range.anyMatch(code -> code == status));
+    }
+
+    /**
+     * Whether a request that failed with {@code failure} is worth sending again. Connect failures
+     * never reached the server, so they are retried whatever the method.
+     */
+    public boolean isRetryable(IOException failure, HttpMode httpMode) {
+        if (isConnectFailure(failure)) {
+            return retryOnConnectFailure;
+        }
+        if (isReadFailure(failure)) {
+            return retryOnReadFailure && isReplayable(httpMode);
+        }
+        return false;
+    }
+
+    private boolean isReplayable(HttpMode httpMode) {
+        return retryNonIdempotent || IDEMPOTENT.contains(httpMode);
+    }
+
+    private static boolean isConnectFailure(IOException failure) {
+        return failure instanceof ConnectException || failure instanceof ConnectTimeoutException;
+    }
+
+    private static boolean isReadFailure(IOException failure) {
+        return failure instanceof InterruptedIOException || failure instanceof SocketException
+                || failure instanceof NoHttpResponseException;
+    }
+
+    /**
+     * How long to wait before the attempt following {@code attempt}, which starts at 1.
+     *
+     * @param retryAfter the {@code Retry-After} header of the failed response, or {@code null}
+     */
+    public long delayMillis(int attempt, String retryAfter) {
+        long ceiling = Math.max(maxBackoffMillis, 0);
+        long exponential = Math.max(backoffMillis, 0) << Math.min(attempt - 1, 30);
+        long backoff = exponential < 0 ? ceiling : Math.min(exponential, ceiling);
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        if (honorRetryAfter && retryAfter != null) {
+            delay = Math.max(delay, Math.min(parseRetryAfter(retryAfter), MAX_RETRY_AFTER_MILLIS));
+        }
+        return delay;
+    }
+
+    private static long parseRetryAfter(String value) {
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(Long.parseLong(value.trim()), 0));
+        } catch (NumberFormatException e) {
+            Instant date = DateUtils.parseStandardDate(value.trim());
+            return date != null ? Math.max(date.toEpochMilli() - System.currentTimeMillis(), 0) : 0;
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<RetryPolicy> {
+        public static final int maxAttempts = 3;
+        public static final long backoffMillis = 1000;
+        public static final long maxBackoffMillis = 30000;
+        public static final String retryOnStatus = "429,502:504";
+        public static final boolean retryOnConnectFailure = true;
+        public static final boolean retryOnReadFailure = false;
+        public static final boolean retryNonIdempotent = false;
+        public static final boolean honorRetryAfter = true;
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Retry policy";
+        }
+
+        public FormValidation doCheckMaxAttempts(@QueryParameter int value) {
+            if (value < 1) {
+                return FormValidation.error("Max attempts must be at least 1");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckRetryOnStatus(@QueryParameter String value) {
+            return HttpRequest.DescriptorImpl.checkValidResponseCodes(value);
+        }
+    }
+}
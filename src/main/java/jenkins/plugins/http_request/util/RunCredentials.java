@@ -0,0 +1,153 @@
+package jenkins.plugins.http_request.util;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+
+/**
+ * Credentials resolved for the requests of a build, so a loop of authenticated requests walks the
+ * credential providers, takes a snapshot and records the usage of the credential on its fingerprint
+ * once per credential rather than once per request.
+ * <p>
+ * Credentials are keyed by their id and the URL up to its path, which is all their domains can
+ * match on, and are forgotten when the build is finalized. Nothing is kept for a finished build.
+ */
+public final class RunCredentials {
+
+    private static final Map<Run<?, ?>, RunState> RUNS = new WeakHashMap<>();
+
+    private RunCredentials() {
+    }
+
+    /**
+     * Looks up the credential {@code id} available to {@code project} for {@code url}.
+     *
+     * @return the credential with its snapshot, or {@code null} when there is none
+     */
+    public static Resolved resolve(Item project, Run<?, ?> run, String url, String id) {
+        Map<String, Resolved> resolved = null;
+        String key = id + ' ' + scope(url);
+        RunState state = run != null ? state(run) : null;
+        if (state != null) {
+            resolved = state.resolved;
+            Resolved cached = resolved.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        StandardCredentials credential = CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentialsInItem(
+                        StandardCredentials.class,
+                        project, ACL.SYSTEM2,
+                        URIRequirementBuilder.fromUri(url).build()),
+                CredentialsMatchers.withId(id));
+        if (credential == null) {
+            return null;
+        }
+        // the snapshot is what gets serialized to the agent
+        Resolved result = new Resolved(credential, CredentialsProvider.snapshot(credential));
+        if (resolved != null) {
+            Resolved concurrent = resolved.putIfAbsent(key, result);
+            if (concurrent != null) {
+                return concurrent;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that {@code run} used {@code credential}, the first time only, as every record is a
+     * write of its fingerprint. A credential is told apart by the instance {@link #resolve} returned
+     * for the run, never by its secrets, so a credential resolved for another URL scope is recorded
+     * once more.
+     */
+    public static void track(Run<?, ?> run, Resolved credential) {
+        if (credential == null) {
+            return;
+        }
+        RunState state = run != null ? state(run) : null;
+        if (state == null || state.tracked.add(credential)) {
+            CredentialsProvider.trackAll(run, credential.getCredential());
+        }
+    }
+
+    /**
+     * The credentials of {@code run}, or {@code null} once it finished, as it would never be finalized
+     * again to forget them.
+     */
+    private static RunState state(Run<?, ?> run) {
+        if (!run.isLogUpdated()) {
+            return null;
+        }
+        synchronized (RUNS) {
+            return RUNS.computeIfAbsent(run, r -> new RunState());
+        }
+    }
+
+    private static String scope(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end);
+    }
+
+    private static final class RunState {
+        private final Map<String, Resolved> resolved = new ConcurrentHashMap<>();
+        /**
+         * Compared by identity, as {@link Resolved} does not override {@code equals}.
+         */
+        private final Set<Resolved> tracked = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * A credential as found in its store, and its snapshot.
+     */
+    public static final class Resolved {
+        private final StandardCredentials credential;
+        private final StandardCredentials snapshot;
+
+        private Resolved(StandardCredentials credential, StandardCredentials snapshot) {
+            this.credential = credential;
+            this.snapshot = snapshot;
+        }
+
+        public StandardCredentials getCredential() {
+            return credential;
+        }
+
+        public StandardCredentials getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    @Extension
+    public static final class Cleaner extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(@NonNull Run<?, ?> run) {
+            synchronized (RUNS) {
+                RUNS.remove(run);
+            }
+        }
+    }
+}
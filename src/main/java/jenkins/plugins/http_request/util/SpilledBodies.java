@@ -0,0 +1,66 @@
+package jenkins.plugins.http_request.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+/**
+ * Bodies of responses returned to a build and spooled to files on the nodes that read them. The files
+ * stay there, so the content is only read when it is used, and are deleted when the build is finalized,
+ * as a response read as a String is rarely closed.
+ * <p>
+ * Files of builds interrupted by a restart are left to the sweep of old spooled bodies.
+ */
+public final class SpilledBodies {
+
+    private static final Logger LOGGER = Logger.getLogger(SpilledBodies.class.getName());
+
+    private static final Map<Run<?, ?>, List<FilePath>> RUNS = new WeakHashMap<>();
+
+    private SpilledBodies() {
+    }
+
+    /**
+     * Deletes {@code body} once {@code run} is finalized.
+     */
+    public static void deleteWhenFinalized(Run<?, ?> run, FilePath body) {
+        synchronized (RUNS) {
+            RUNS.computeIfAbsent(run, r -> new ArrayList<>()).add(body);
+        }
+    }
+
+    @Extension
+    public static final class Cleaner extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(@NonNull Run<?, ?> run) {
+            List<FilePath> bodies;
+            synchronized (RUNS) {
+                bodies = RUNS.remove(run);
+            }
+            if (bodies == null) {
+                return;
+            }
+            for (FilePath body : bodies) {
+                try {
+                    body.delete();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to delete the response body spooled to " + body, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
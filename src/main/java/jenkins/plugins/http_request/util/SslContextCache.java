@@ -0,0 +1,140 @@
+package jenkins.plugins.http_request.util;
+
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.config.Registry;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.ssl.SSLContexts;
+
+/**
+ * Holds the {@link SSLContext}s shared by all requests of this JVM.
+ * <p>
+ * Building a context is expensive, and each one carries its own client session cache, so reusing
+ * them lets TLS sessions be resumed across requests and connection pools instead of paying for
+ * a full handshake every time.
+ */
+public final class SslContextCache {
+
+    private SslContextCache() {
+    }
+
+    /**
+     * The context used when SSL errors are ignored: every certificate is trusted.
+     */
+    public static SSLContext insecureContext() {
+        return Insecure.CONTEXT;
+    }
+
+    /**
+     * The context trusting the JVM default trust store.
+     */
+    public static SSLContext defaultContext() {
+        return Default.CONTEXT;
+    }
+
+    /**
+     * The socket factories for the classic client.
+     */
+    public static Registry<ConnectionSocketFactory> socketFactoryRegistry(boolean ignoreSslErrors) {
+        return ignoreSslErrors ? Insecure.SOCKET_FACTORIES : Default.SOCKET_FACTORIES;
+    }
+
+    /**
+     * The TLS strategy for the async client.
+     */
+    public static TlsStrategy tlsStrategy(boolean ignoreSslErrors, boolean useSystemProperties) {
+        if (ignoreSslErrors) {
+            return Insecure.TLS_STRATEGY;
+        }
+        return useSystemProperties ? SystemDefault.TLS_STRATEGY : Default.TLS_STRATEGY;
+    }
+
+    private static Registry<ConnectionSocketFactory> socketFactories(SSLConnectionSocketFactory sslSocketFactory) {
+        return RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("https", sslSocketFactory)
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .build();
+    }
+
+    private static final class Insecure {
+        private static final SSLContext CONTEXT = createInsecureContext();
+        private static final Registry<ConnectionSocketFactory> SOCKET_FACTORIES =
+                socketFactories(new SSLConnectionSocketFactory(CONTEXT, NoopHostnameVerifier.INSTANCE));
+        private static final TlsStrategy TLS_STRATEGY = ClientTlsStrategyBuilder.create()
+                .setSslContext(CONTEXT)
+                .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                .build();
+
+        private static SSLContext createInsecureContext() {
+            try {
+                SSLContext sc = SSLContext.getInstance("SSL");
+                sc.init(null, new TrustManager[]{new NoopTrustManager()}, new SecureRandom());
+                return sc;
+            } catch (NoSuchAlgorithmException | KeyManagementException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Default {
+        private static final SSLContext CONTEXT = SSLContexts.createDefault();
+        private static final Registry<ConnectionSocketFactory> SOCKET_FACTORIES =
+                socketFactories(new SSLConnectionSocketFactory(CONTEXT));
+        private static final TlsStrategy TLS_STRATEGY = ClientTlsStrategyBuilder.create()
+                .setSslContext(CONTEXT)
+                .build();
+    }
+
+    private static final class SystemDefault {
+        private static final TlsStrategy TLS_STRATEGY = ClientTlsStrategyBuilder.create()
+                .useSystemProperties()
+                .build();
+    }
+
+    private static class NoopTrustManager extends X509ExtendedTrustManager {
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] arg0, String arg1) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.plugins.http_request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.hc.core5.ssl.SSLContexts;
+
+/**
+ * A TLS server negotiating HTTP/2 with ALPN, the Jetty server of {@link HttpRequestTestBase}
+ * only speaks HTTP/1.1 over plain http. Every request is answered with
+ * {@link HttpRequestTestBase#ALL_IS_WELL} and the protocol it came with is recorded.
+ */
+final class H2Server implements AutoCloseable {
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private final HttpAsyncServer server;
+    private final String baseURL;
+    private final List<String> protocols = new CopyOnWriteArrayList<>();
+
+    H2Server() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = H2Server.class.getResourceAsStream("localhost.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+        SSLContext sslContext = SSLContexts.custom().loadKeyMaterial(keyStore, PASSWORD).build();
+
+        server = H2ServerBootstrap.bootstrap()
+                .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                .setTlsStrategy(new H2ServerTlsStrategy(sslContext))
+                .register("*", new AsyncServerRequestHandler<Message<HttpRequest, String>>() {
+                    @Override
+                    public AsyncRequestConsumer<Message<HttpRequest, String>> prepare(
+                            HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+                        return new BasicRequestConsumer<>(entityDetails != null ? new StringAsyncEntityConsumer() : null);
+                    }
+
+                    @Override
+                    public void handle(Message<HttpRequest, String> message, ResponseTrigger responseTrigger,
+                                       HttpContext context) throws HttpException, IOException {
+                        protocols.add(String.valueOf(context.getProtocolVersion()));
+                        responseTrigger.submitResponse(AsyncResponseBuilder.create(HttpStatus.SC_OK)
+                                .setEntity(HttpRequestTestBase.ALL_IS_WELL, ContentType.TEXT_PLAIN)
+                                .build(), context);
+                    }
+                })
+                .create();
+        server.start();
+        ListenerEndpoint endpoint = server.listen(new InetSocketAddress("localhost", 0), URIScheme.HTTPS).get();
+        baseURL = "https://localhost:" + ((InetSocketAddress) endpoint.getAddress()).getPort();
+    }
+
+    String baseURL() {
+        return baseURL;
+    }
+
+    /**
+     * The protocol versions of the requests served so far, in the order they were answered.
+     */
+    List<String> protocols() {
+        return protocols;
+    }
+
+    @Override
+    public void close() {
+        server.close(CloseMode.IMMEDIATE);
+    }
+}
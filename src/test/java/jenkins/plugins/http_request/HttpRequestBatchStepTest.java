@@ -0,0 +1,69 @@
+package jenkins.plugins.http_request;
+
+import static jenkins.plugins.http_request.Registers.registerInvalidStatusCode;
+import static jenkins.plugins.http_request.Registers.registerRequestChecker;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import hudson.model.Result;
+
+@WithJenkins
+class HttpRequestBatchStepTest extends HttpRequestTestBase {
+
+    @Test
+    void returnsResponsesInOrder() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+        registerRequestChecker(HttpMode.POST);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def responses = httpRequestBatch parallelism: 2, requests: [\n" +
+                        "    [url: '" + baseURL() + "/doGET'],\n" +
+                        "    [url: '" + baseURL() + "/doPOST', httpMode: 'POST'],\n" +
+                        "    [url: '" + baseURL() + "/doGET']\n" +
+                        "]\n" +
+                        "println('Count: '+responses.size())\n" +
+                        "println('Statuses: '+responses.collect { it.status })\n" +
+                        "println('Response: '+responses[1].content)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Count: 3", run);
+        j.assertLogContains("Statuses: [200, 200, 200]", run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+    }
+
+    @Test
+    void failedRequestFailsTheBatchAfterAllRan() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+        registerInvalidStatusCode();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "httpRequestBatch requests: [\n" +
+                        "    [url: '" + baseURL() + "/invalidStatusCode'],\n" +
+                        "    [url: '" + baseURL() + "/doGET', consoleLogResponseBody: true]\n" +
+                        "]\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("Fail: Status code 400 is not in the accepted range: 100:399", run);
+        j.assertLogContains(ALL_IS_WELL, run);
+    }
+}
@@ -536,6 +536,33 @@ class HttpRequestStepCredentialsTest extends HttpRequestTestBase {
         j.assertLogContains("Treating UnknownHostException", run);
     }
 
+    /** Check that the key material of a Certificate credential is only
+     *  decoded once for repeated requests.
+     */
+    @Test
+    void testCertKeyMaterialIsCached() throws Exception {
+        StandardCredentials credential = getCertificateCredentialTrusted();
+        store.addCredentials(Domain.global(), credential);
+
+        // Configure the build to use the credential twice
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        String script =
+                cpsScriptCredentialTestImports() +
+                "for (int i = 0; i < 2; i++) {\n" +
+                cpsScriptCredentialTestHttpRequest("cred_cert_with_ca", "CONTROLLER BUILT-IN", true, false) +
+                "}\n";
+        proj.setDefinition(new CpsFlowDefinition(script, false));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+        if (verbosePipelines) System.out.println(getLogAsStringPlaintext(run));
+
+        // Check expectations
+        j.assertBuildStatus(Result.SUCCESS, run);
+        j.assertLogContains("Using authentication: cred_cert_with_ca", run);
+        j.assertLogContains("Added Key Material from provided KeyStore (cached)", run);
+    }
+
     /////////////////////////////////////////////////////////////////
     // Helpers for pipeline tests with remote agents
     /////////////////////////////////////////////////////////////////
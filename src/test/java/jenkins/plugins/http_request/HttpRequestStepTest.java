@@ -2,26 +2,46 @@ package jenkins.plugins.http_request;
 
 import static jenkins.plugins.http_request.Registers.registerAcceptedTypeRequestChecker;
 import static jenkins.plugins.http_request.Registers.registerBasicAuth;
+import static jenkins.plugins.http_request.Registers.registerBrotli;
+import static jenkins.plugins.http_request.Registers.registerCacheable;
+import static jenkins.plugins.http_request.Registers.registerCheckCompressedRequestBody;
+import static jenkins.plugins.http_request.Registers.registerCheckRequestBody;
 import static jenkins.plugins.http_request.Registers.registerContentTypeRequestChecker;
 import static jenkins.plugins.http_request.Registers.registerCustomHeaders;
+import static jenkins.plugins.http_request.Registers.registerETag;
+import static jenkins.plugins.http_request.Registers.registerEncodedUnavailableOnce;
 import static jenkins.plugins.http_request.Registers.registerFileUpload;
 import static jenkins.plugins.http_request.Registers.registerFormAuth;
 import static jenkins.plugins.http_request.Registers.registerFormAuthBad;
 import static jenkins.plugins.http_request.Registers.registerFormData;
 import static jenkins.plugins.http_request.Registers.registerInvalidStatusCode;
+import static jenkins.plugins.http_request.Registers.registerRangeDownload;
+import static jenkins.plugins.http_request.Registers.registerRemotePort;
 import static jenkins.plugins.http_request.Registers.registerReqAction;
 import static jenkins.plugins.http_request.Registers.registerRequestChecker;
+import static jenkins.plugins.http_request.Registers.registerServerError;
+import static jenkins.plugins.http_request.Registers.registerSlowResponse;
 import static jenkins.plugins.http_request.Registers.registerTimeout;
+import static jenkins.plugins.http_request.Registers.registerUnavailableOnce;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serial;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
 import org.apache.hc.core5.http.ContentType;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
@@ -32,13 +52,23 @@ import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
+import hudson.model.Label;
+import hudson.model.queue.QueueTaskFuture;
 import hudson.model.Result;
+import hudson.slaves.DumbSlave;
 
 import jenkins.plugins.http_request.auth.FormAuthentication;
+import jenkins.plugins.http_request.util.Bulkhead;
+import jenkins.plugins.http_request.util.CircuitBreaker;
+import jenkins.plugins.http_request.util.CircuitBreakerSettings;
+import jenkins.plugins.http_request.util.ConcurrencyLimit;
 import jenkins.plugins.http_request.util.HttpRequestNameValuePair;
+import jenkins.plugins.http_request.util.RateLimit;
 import jenkins.plugins.http_request.util.RequestAction;
+import jenkins.security.MasterToSlaveCallable;
 
 /**
  * @author Martin d'Anjou
@@ -119,6 +149,29 @@ class HttpRequestStepTest extends HttpRequestTestBase {
         j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", run);
     }
 
+    @Test
+    void validatedContentIsStillReadable() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+            "def response = httpRequest url:'"+baseURL()+"/doGET',\n" +
+            "    validResponseContent: '" + ALL_IS_WELL + "'\n" +
+            "println('Response: '+response.content)\n" +
+            "println('Again: '+response.content)\n",
+            true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+        j.assertLogContains("Again: " + ALL_IS_WELL, run);
+    }
+
     @Test
     void badContentFailsTheBuild() throws Exception {
         // Prepare the server
@@ -728,6 +781,781 @@ class HttpRequestStepTest extends HttpRequestTestBase {
         j.assertLogContains(responseText, run);
     }
 
+    @Test
+    void connectionIsReusedBetweenRequests() throws Exception {
+        // Prepare the server
+        registerRemotePort();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def first = httpRequest url:'"+baseURL()+"/remotePort'\n" +
+                        "def second = httpRequest url:'"+baseURL()+"/remotePort'\n" +
+                        "println('Same connection: '+(first.content == second.content))\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Same connection: true", run);
+    }
+
+    @Test
+    void requestBodyIsCompressed() throws Exception {
+        // Prepare the server
+        registerCheckCompressedRequestBody("TestRequestBody".repeat(200));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response = httpRequest httpMode: 'POST', compressRequest: 'gzip', requestBody: 'TestRequestBody' * 200,\n" +
+                        "    url: '"+baseURL()+"/checkCompressedRequestBody'\n" +
+                        "println('Response: '+response.content)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Compressing request body with gzip", run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+    }
+
+    @Test
+    void brotliResponseIsDecoded() throws Exception {
+        // Prepare the server
+        registerBrotli(ALL_IS_WELL);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response = httpRequest url: '"+baseURL()+"/brotli', acceptEncoding: 'br'\n" +
+                        "println('Response: '+response.content)\n" +
+                        "println('Decoded: '+response.contentEncoding+' '+response.encodedBytes+' '+response.decodedBytes)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+        j.assertLogContains("Decoded: br " + (ALL_IS_WELL.length() + 4) + " " + ALL_IS_WELL.length(), run);
+    }
+
+    @Test
+    void logOfFailingAgentRequestsPrecedesTheirOutcome() throws Exception {
+        // Prepare the server
+        registerInvalidStatusCode();
+        j.createOnlineSlave(Label.get("remote"));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "node('remote') {\n" +
+                        "  try {\n" +
+                        "    httpRequest url: '"+baseURL()+"/invalidStatusCode', consoleLogResponseBody: true\n" +
+                        "  } catch (e) {\n" +
+                        "    println('Caught: '+e.message)\n" +
+                        "  }\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations: the batched output of the agent was sent before the step failed
+        j.assertBuildStatusSuccess(run);
+        String log = JenkinsRule.getLog(run);
+        int sending = log.indexOf("Sending request to url: " + baseURL() + "/invalidStatusCode");
+        int body = log.indexOf("Throwing status 400 for test");
+        int caught = log.indexOf("Caught: Fail: Status code 400 is not in the accepted range: 100:399");
+        assertTrue(sending >= 0 && body > sending && caught > body, log);
+    }
+
+    @Test
+    void responsesComeBackFromAnAgent() throws Exception {
+        // Prepare the server, with a body large enough to be compressed on the way back
+        String content = ALL_IS_WELL.repeat(4096);
+        registerRangeDownload(content);
+        j.createOnlineSlave(Label.get("remote"));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "node('remote') {\n" +
+                        "  def response = httpRequest url: '"+baseURL()+"/ranges'\n" +
+                        "  def open = httpRequest url: '"+baseURL()+"/ranges', responseHandle: 'LEAVE_OPEN'\n" +
+                        "  println('String: '+response.content.length())\n" +
+                        "  println('Stream: '+(open.content == response.content))\n" +
+                        "  open.close()\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("String: " + content.length(), run);
+        j.assertLogContains("Stream: true", run);
+        j.assertLogContains("Sending request to url: " + baseURL() + "/ranges", run);
+    }
+
+    @Test
+    void largeBodiesCrossTheChannelGzipped() throws Exception {
+        String content = ALL_IS_WELL.repeat(4096);
+        DumbSlave agent = j.createOnlineSlave();
+
+        ResponseContentSupplier response = agent.getChannel().call(new StringResponse(content));
+
+        // still compressed until first read
+        assertTrue(response.isGzipped());
+        assertEquals(content, response.getContent());
+        assertFalse(response.isGzipped());
+    }
+
+    private static final class StringResponse extends MasterToSlaveCallable<ResponseContentSupplier, RuntimeException> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String content;
+
+        private StringResponse(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public ResponseContentSupplier call() {
+            return new ResponseContentSupplier(ResponseHandle.STRING, SimpleHttpResponse.create(
+                    HttpStatus.OK_200, content.getBytes(StandardCharsets.UTF_8), ContentType.TEXT_PLAIN));
+        }
+    }
+
+    private static final class SetSystemProperty extends MasterToSlaveCallable<Void, RuntimeException> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String value;
+
+        private SetSystemProperty(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Void call() {
+            System.setProperty(name, value);
+            return null;
+        }
+    }
+
+    @Test
+    void spilledResponsesStayOnTheirNodeUntilTheBuildIsFinalized() throws Exception {
+        // Prepare the server, with a body above the spill threshold of both nodes
+        String content = ALL_IS_WELL.repeat(1000);
+        registerRangeDownload(content);
+        DumbSlave agent = j.createOnlineSlave(Label.get("remote"));
+        agent.getChannel().call(new SetSystemProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY, "1024"));
+        Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "http_request-responses");
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response\n" +
+                        "node('remote') {\n" +
+                        "  response = httpRequest url: '"+baseURL()+"/ranges'\n" +
+                        "}\n" +
+                        "node {\n" +
+                        "  def local = httpRequest url: '"+baseURL()+"/ranges', executeOn: 'CONTROLLER'\n" +
+                        "  println('Local: '+local.content.length())\n" +
+                        "}\n" +
+                        "println('Remote: '+response.content.length())\n",
+                true));
+
+        // Execute the build
+        System.setProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY, "1024");
+        WorkflowRun run;
+        try {
+            run = j.waitForCompletion(proj.scheduleBuild2(0).waitForStart());
+        } finally {
+            System.clearProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY);
+        }
+
+        // Check expectations: the content was read from the agent, the files are gone with the build
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Remote: " + content.length(), run);
+        j.assertLogContains("Local: " + content.length(), run);
+        // the build is finalized a moment after it completed
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (spilledBodies(spillDirectory) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, spilledBodies(spillDirectory));
+    }
+
+    private static long spilledBodies(Path spillDirectory) throws IOException {
+        if (!Files.isDirectory(spillDirectory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void spilledContentAboveItsLimitIsNotReadAsAString() throws Exception {
+        // Prepare the server, with a body the agent spools
+        String content = ALL_IS_WELL.repeat(1000);
+        registerRangeDownload(content);
+        DumbSlave agent = j.createOnlineSlave(Label.get("remote"));
+        agent.getChannel().call(new SetSystemProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY, "1024"));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response\n" +
+                        "node('remote') {\n" +
+                        "  response = httpRequest url: '"+baseURL()+"/ranges'\n" +
+                        "}\n" +
+                        "try {\n" +
+                        "  println('Content: '+response.content)\n" +
+                        "} catch (e) {\n" +
+                        "  println('Caught: '+e.message)\n" +
+                        "}\n",
+                true));
+
+        // Execute the build with a limit below the body, on the controller reading it
+        System.setProperty(ResponseContentSupplier.MAX_SPILLED_CONTENT_PROPERTY, "2048");
+        WorkflowRun run;
+        try {
+            run = proj.scheduleBuild2(0).get();
+        } finally {
+            System.clearProperty(ResponseContentSupplier.MAX_SPILLED_CONTENT_PROPERTY);
+        }
+
+        // Check expectations: only the size of the body kept on the agent was asked for
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Caught: The response body of " + content.length() + " bytes is larger than the 2048 bytes", run);
+        j.assertLogNotContains("Content: ", run);
+    }
+
+    @Test
+    void segmentedDownloadsStillReturnTheContent() throws Exception {
+        // Prepare the server
+        String content = "0123456789".repeat(10000);
+        registerRangeDownload(content);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "node {\n" +
+                        "  def response = httpRequest url: '"+baseURL()+"/ranges', outputFile: 'file.txt', segments: 4\n" +
+                        "  println('Length: '+response.content.length())\n" +
+                        "}\n",
+                true));
+
+        // Execute the build with segments small enough for the body
+        System.setProperty(HttpRequestExecution.MIN_SEGMENT_BYTES_PROPERTY, "1024");
+        WorkflowRun run;
+        try {
+            run = proj.scheduleBuild2(0).get();
+        } finally {
+            System.clearProperty(HttpRequestExecution.MIN_SEGMENT_BYTES_PROPERTY);
+        }
+
+        // Check expectations: the content is returned, so the body came over a single stream
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Length: " + content.length(), run);
+        j.assertLogNotContains("in 4 segments", run);
+    }
+
+    @Test
+    void executeOnKeepsRequestsOffTheAgent() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+        j.createOnlineSlave(Label.get("remote"));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "node('remote') {\n" +
+                        "  def response = httpRequest url: '"+baseURL()+"/doGET', executeOn: 'AUTO'\n" +
+                        "  println('Response: '+response.content)\n" +
+                        "  httpRequest url: '"+baseURL()+"/doGET', executeOn: 'CONTROLLER', outputFile: 'response.txt'\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+        j.assertLogContains("executeOn: 'CONTROLLER' cannot use files of a workspace on an agent", run);
+    }
+
+    @Test
+    void unknownExecuteOnIsRejectedBeforeSending() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "node {\n" +
+                        "  httpRequest url: '"+baseURL()+"/doGET', executeOn: 'elsewhere'\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("ExecuteOn.elsewhere", run);
+        j.assertLogNotContains("Sending request to url", run);
+    }
+
+    @Test
+    void asyncRequestSendsBodyAndReturnsResponse() throws Exception {
+        // Prepare the server
+        registerCheckRequestBody();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response = httpRequest httpMode: 'POST', async: true, requestBody: 'TestRequestBody', url:'"+baseURL()+"/checkRequestBody'\n" +
+                        "println('Status: '+response.status)\n" +
+                        "println('Response: '+response.content)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Status: 200", run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+    }
+
+    @Test
+    void asyncRequestFailsOnInvalidStatus() throws Exception {
+        // Prepare the server
+        registerInvalidStatusCode();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "httpRequest async: true, url:'"+baseURL()+"/invalidStatusCode'\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("Fail: Status code 400 is not in the accepted range: 100:399", run);
+    }
+
+    @Test
+    void http2IsNegotiatedOverTls() throws Exception {
+        try (H2Server server = new H2Server()) {
+            // Configure the build
+            WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+            proj.setDefinition(new CpsFlowDefinition(
+                    "parallel first: {\n" +
+                            "    println('First: '+httpRequest(httpVersion: 'HTTP_2', ignoreSslErrors: true, url:'"+server.baseURL()+"/doGET').content)\n" +
+                            "}, second: {\n" +
+                            "    println('Second: '+httpRequest(httpVersion: 'HTTP_2', ignoreSslErrors: true, url:'"+server.baseURL()+"/doGET').content)\n" +
+                            "}\n",
+                    true));
+
+            // Execute the build
+            WorkflowRun run = proj.scheduleBuild2(0).get();
+
+            // Check expectations
+            j.assertBuildStatusSuccess(run);
+            j.assertLogContains("First: " + ALL_IS_WELL, run);
+            j.assertLogContains("Second: " + ALL_IS_WELL, run);
+            j.assertLogContains("Protocol: HTTP/2.0", run);
+            assertEquals(List.of("HTTP/2.0", "HTTP/2.0"), server.protocols());
+        }
+    }
+
+    @Test
+    void http2FallsBackToHttp11OnPlainHttp() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "println('Response: '+httpRequest(httpVersion: 'HTTP_2', url:'"+baseURL()+"/doGET').content)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+        j.assertLogContains("Protocol: HTTP/1.1", run);
+    }
+
+    @Test
+    void largeResponseIsSpooledToDisk() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response = httpRequest '"+baseURL()+"/doGET'\n" +
+                        "println('Response: '+response.content)\n" +
+                        "response.close()\n",
+                true));
+
+        // Execute the build with a threshold below the response size
+        System.setProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY, "4");
+        WorkflowRun run;
+        try {
+            run = proj.scheduleBuild2(0).get();
+        } finally {
+            System.clearProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY);
+        }
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+    }
+
+    @Test
+    void spooledResponseWithoutTheExpectedContentFails() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "httpRequest url: '"+baseURL()+"/doGET', validResponseContent: 'is not well'\n",
+                true));
+
+        // Execute the build with a threshold below the response size
+        System.setProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY, "4");
+        WorkflowRun run;
+        try {
+            run = proj.scheduleBuild2(0).get();
+        } finally {
+            System.clearProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY);
+        }
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("Fail: Response doesn't contain expected content 'is not well'", run);
+    }
+
+    @Test
+    void cachedResponseIsRevalidated() throws Exception {
+        // Prepare the server
+        registerETag();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def first = httpRequest url: '"+baseURL()+"/etag', useCache: true\n" +
+                        "def second = httpRequest url: '"+baseURL()+"/etag', useCache: true\n" +
+                        "println('First: '+first.cacheHit)\n" +
+                        "println('Second: '+second.cacheHit+' '+second.status+' '+second.content)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Response revalidated, served from cache", run);
+        j.assertLogContains("First: false", run);
+        j.assertLogContains("Second: true 200 " + ALL_IS_WELL, run);
+    }
+
+    @Test
+    void authenticatedResponsesAreOnlyCachedWhenPublic() throws Exception {
+        // Prepare the server
+        AtomicInteger calls = registerCacheable();
+        registerBasicCredential("keyname1", "username1", "password1");
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "for (int i = 0; i < 2; i++) {\n" +
+                        "  httpRequest url: '"+baseURL()+"/cacheable', useCache: true\n" +
+                        "  httpRequest url: '"+baseURL()+"/cacheable', useCache: true, authentication: 'keyname1'\n" +
+                        "  httpRequest url: '"+baseURL()+"/cacheable?public', useCache: true, authentication: 'keyname1'\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations: the private authenticated response is fetched twice, the others once
+        j.assertBuildStatusSuccess(run);
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void retriesRetryableStatus() throws Exception {
+        // Prepare the server
+        registerUnavailableOnce();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response = httpRequest url: '"+baseURL()+"/unavailableOnce',\n" +
+                        "    retry: [maxAttempts: 3, backoffMillis: 10]\n" +
+                        "println('Response: '+response.content)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Attempt 1 of 3 failed with status code 503, retrying in", run);
+        j.assertLogContains("Response: " + ALL_IS_WELL, run);
+    }
+
+    @Test
+    void decodedSizesAreThoseOfTheLastResponse() throws Exception {
+        // Prepare the server
+        registerEncodedUnavailableOnce();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def response = httpRequest url: '"+baseURL()+"/encodedUnavailableOnce',\n" +
+                        "    retry: [maxAttempts: 3, backoffMillis: 10]\n" +
+                        "println('Decoded: '+response.contentEncoding+' '+response.encodedBytes+' '+response.decodedBytes)\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations: the gzipped body of the retried response is not counted
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Attempt 1 of 3 failed with status code 503, retrying in", run);
+        j.assertLogContains("Decoded: null -1 -1", run);
+    }
+
+    @Test
+    void circuitBreakerFailsFastOnceOpen() throws Exception {
+        // Prepare the server
+        registerServerError();
+        CircuitBreakerSettings settings = new CircuitBreakerSettings();
+        settings.setWindowSize(2);
+        settings.setMinimumCalls(2);
+        HttpRequestGlobalConfig.get().setCircuitBreaker(settings);
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "for (int i = 0; i < 2; i++) {\n" +
+                        "    httpRequest url: '"+baseURL()+"/serverError', validResponseCodes: '100:599'\n" +
+                        "}\n" +
+                        "httpRequest url: '"+baseURL()+"/serverError', validResponseCodes: '100:599'\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("Fail: circuit breaker for " + baseURL() + " is open", run);
+        assertEquals(CircuitBreaker.State.OPEN, HttpRequestGlobalConfig.get().getCircuitBreakers().stream()
+                .filter(breaker -> breaker.getHost().equals(baseURL())).findFirst().orElseThrow().getState());
+    }
+
+    @Test
+    void concurrencyLimitBoundsTheWait() throws Exception {
+        // Prepare the server
+        registerTimeout();
+        registerRequestChecker(HttpMode.GET);
+        ConcurrencyLimit limit = new ConcurrencyLimit("localhost", 1);
+        limit.setMaxWaitSeconds(1);
+        HttpRequestGlobalConfig.get().setConcurrencyLimits(List.of(limit));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "parallel slow: {\n" +
+                        "    httpRequest url: '"+baseURL()+"/timeout', timeout: 4, validResponseCodes: '408'\n" +
+                        "}, queued: {\n" +
+                        "    sleep time: 500, unit: 'MILLISECONDS'\n" +
+                        "    try {\n" +
+                        "        httpRequest url: '"+baseURL()+"/doGET'\n" +
+                        "    } catch (e) {\n" +
+                        "        echo \"queued: ${e.message}\"\n" +
+                        "    }\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Waiting for one of the 1 concurrent requests allowed to localhost", run);
+        j.assertLogContains("Fail: none of the 1 concurrent requests allowed to localhost completed within 1s", run);
+        Bulkhead bulkhead = HttpRequestGlobalConfig.get().getBulkheads().stream()
+                .filter(b -> b.getHostPattern().equals("localhost")).findFirst().orElseThrow();
+        assertEquals(1, bulkhead.getRejected());
+        assertEquals(0, bulkhead.getInFlight());
+    }
+
+    @Test
+    void concurrencyLimitIsNotHeldWhileWaitingToRetry() throws Exception {
+        // Prepare the server
+        registerUnavailableOnce();
+        registerRequestChecker(HttpMode.GET);
+        ConcurrencyLimit limit = new ConcurrencyLimit("localhost", 1);
+        limit.setMaxWaitSeconds(1);
+        HttpRequestGlobalConfig.get().setConcurrencyLimits(List.of(limit));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "parallel retrying: {\n" +
+                        "    def response = httpRequest url: '"+baseURL()+"/unavailableOnce',\n" +
+                        "        retry: [maxAttempts: 2, backoffMillis: 4000, maxBackoffMillis: 4000]\n" +
+                        "    println('Retried: '+response.content)\n" +
+                        "}, other: {\n" +
+                        "    sleep time: 500, unit: 'MILLISECONDS'\n" +
+                        "    println('Other: '+httpRequest(url: '"+baseURL()+"/doGET').content)\n" +
+                        "}\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Attempt 1 of 2 failed with status code 503, retrying in", run);
+        j.assertLogContains("Retried: " + ALL_IS_WELL, run);
+        j.assertLogContains("Other: " + ALL_IS_WELL, run);
+        Bulkhead bulkhead = HttpRequestGlobalConfig.get().getBulkheads().stream()
+                .filter(b -> b.getHostPattern().equals("localhost")).findFirst().orElseThrow();
+        assertEquals(0, bulkhead.getRejected());
+        assertEquals(0, bulkhead.getInFlight());
+    }
+
+    @Test
+    void rateLimitSpacesOutRequests() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+        // slow enough for the second request to find no token, even when the first one takes seconds
+        RateLimit limit = new RateLimit(0.25);
+        limit.setHostPattern("localhost");
+        HttpRequestGlobalConfig.get().setRateLimits(List.of(limit));
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "httpRequest '"+baseURL()+"/doGET'\n" +
+                        "httpRequest '"+baseURL()+"/doGET'\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Rate limited, waited", run);
+    }
+
+    @Test
+    void rateLimitFailsRequestsWaitingTooLong() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+        RateLimit limit = new RateLimit(0.1);
+        limit.setAuthentication("rate-limited");
+        limit.setMaxWaitSeconds(1);
+        HttpRequestGlobalConfig.get().setRateLimits(List.of(limit));
+        registerBasicCredential("rate-limited", "user", "password");
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "httpRequest url: '"+baseURL()+"/doGET', authentication: 'rate-limited'\n" +
+                        "httpRequest url: '"+baseURL()+"/doGET'\n" +
+                        "httpRequest url: '"+baseURL()+"/doGET', authentication: 'rate-limited'\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatus(Result.FAILURE, run);
+        j.assertLogContains("Fail: rate limit of 0.1 requests/s for authentication rate-limited would delay the request by more than 1s", run);
+    }
+
+    @Test
+    void identicalRequestsInFlightAreCoalesced() throws Exception {
+        // Prepare the server
+        AtomicInteger calls = registerSlowResponse();
+
+        // Configure the build
+        WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj");
+        proj.setDefinition(new CpsFlowDefinition(
+                "def branches = [:]\n" +
+                        "for (int i = 0; i < 3; i++) {\n" +
+                        "    branches[\"b${i}\"] = {\n" +
+                        "        def response = httpRequest url: '"+baseURL()+"/slow', coalesce: true\n" +
+                        "        echo \"${response.content} coalesced=${response.coalesced}\"\n" +
+                        "    }\n" +
+                        "}\n" +
+                        "parallel branches\n",
+                true));
+
+        // Execute the build
+        WorkflowRun run = proj.scheduleBuild2(0).get();
+
+        // Check expectations
+        j.assertBuildStatusSuccess(run);
+        j.assertLogContains("Response shared with an identical request in flight", run);
+        j.assertLogContains(ALL_IS_WELL + " coalesced=true", run);
+        j.assertLogContains(ALL_IS_WELL + " coalesced=false", run);
+        assertTrue(calls.get() < 3);
+    }
+
+    @Test
+    void requestsOfOtherBuildsAreNotCoalesced() throws Exception {
+        // Prepare the server
+        AtomicInteger calls = registerSlowResponse();
+
+        // Configure two jobs sending the same request at the same time
+        List<QueueTaskFuture<WorkflowRun>> runs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            WorkflowJob proj = j.jenkins.createProject(WorkflowJob.class, "proj" + i);
+            proj.setDefinition(new CpsFlowDefinition(
+                    "def response = httpRequest url: '"+baseURL()+"/slow', coalesce: true\n" +
+                            "echo \"coalesced=${response.coalesced}\"\n",
+                    true));
+            runs.add(proj.scheduleBuild2(0));
+        }
+
+        // Check expectations
+        for (QueueTaskFuture<WorkflowRun> run : runs) {
+            WorkflowRun completed = run.get();
+            j.assertBuildStatusSuccess(completed);
+            j.assertLogContains("coalesced=false", completed);
+        }
+        assertEquals(2, calls.get());
+    }
+
     @Test
     void nonExistentProxyAuthFailsTheBuild() throws Exception {
         // Prepare the server
@@ -2,34 +2,56 @@ package jenkins.plugins.http_request;
 
 import static jenkins.plugins.http_request.Registers.registerAcceptedTypeRequestChecker;
 import static jenkins.plugins.http_request.Registers.registerBasicAuth;
+import static jenkins.plugins.http_request.Registers.registerChunkedBody;
 import static jenkins.plugins.http_request.Registers.registerCheckBuildParameters;
 import static jenkins.plugins.http_request.Registers.registerCheckRequestBody;
 import static jenkins.plugins.http_request.Registers.registerCheckRequestBodyWithTag;
 import static jenkins.plugins.http_request.Registers.registerContentTypeRequestChecker;
 import static jenkins.plugins.http_request.Registers.registerCustomHeaders;
 import static jenkins.plugins.http_request.Registers.registerCustomHeadersResolved;
+import static jenkins.plugins.http_request.Registers.registerEncodedInterruptedDownload;
+import static jenkins.plugins.http_request.Registers.registerEncodedRangeDownload;
 import static jenkins.plugins.http_request.Registers.registerFileUpload;
 import static jenkins.plugins.http_request.Registers.registerFormAuth;
 import static jenkins.plugins.http_request.Registers.registerFormAuthBad;
+import static jenkins.plugins.http_request.Registers.registerInterruptedDownload;
 import static jenkins.plugins.http_request.Registers.registerInvalidStatusCode;
+import static jenkins.plugins.http_request.Registers.registerRangeDownload;
 import static jenkins.plugins.http_request.Registers.registerReqAction;
 import static jenkins.plugins.http_request.Registers.registerRequestChecker;
 import static jenkins.plugins.http_request.Registers.registerTimeout;
 import static jenkins.plugins.http_request.Registers.registerUnwrappedPutFileUpload;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import jakarta.servlet.ServletException;
 
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsUseListener;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.client5.http.impl.classic.HttpResponseAdapter;
 import org.apache.hc.core5.http.io.entity.StringEntity;
@@ -46,17 +68,29 @@ import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.TestExtension;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+import org.springframework.security.core.Authentication;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
 
+import hudson.FilePath;
 import hudson.Functions;
 import hudson.model.Cause.UserIdCause;
+import hudson.model.Fingerprint;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Node;
 import hudson.model.ParametersAction;
 import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Result;
+import hudson.model.Run;
 import hudson.model.StringParameterDefinition;
 import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
 
 import jenkins.plugins.http_request.auth.FormAuthentication;
 import jenkins.plugins.http_request.util.HttpRequestNameValuePair;
@@ -91,6 +125,28 @@ class HttpRequestTest extends HttpRequestTestBase {
         this.j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", build);
     }
 
+    @Test
+    void http2FallsBackToHttp11OnPlainConnections() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setHttpVersion(HttpVersion.HTTP_2);
+        httpRequest.setConsoleLogResponseBody(true);
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        this.j.assertLogContains("Protocol: HTTP/1.1", build);
+        this.j.assertLogContains(ALL_IS_WELL, build);
+        this.j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", build);
+    }
+
     @Test
     void quietTest() throws Exception {
         // Prepare the server
@@ -158,6 +214,85 @@ class HttpRequestTest extends HttpRequestTestBase {
         this.j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", build);
     }
 
+    @Test
+    void canDetectContentWhileStreaming() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setValidResponseContent("is well");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        this.j.assertLogNotContains(ALL_IS_WELL, build);
+    }
+
+    @Test
+    void canDetectContentAcrossChunksWhileStreaming() throws Exception {
+        // Prepare the server
+        registerChunkedBody("All is w", "ell");
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/chunked");
+        httpRequest.setValidResponseContent("is well");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        this.j.assertLogNotContains("Fail: Response doesn't contain expected content", build);
+    }
+
+    @Test
+    void missingStreamedContentFailsTheBuild() throws Exception {
+        // Prepare the server
+        registerChunkedBody("All is w", "ell");
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/chunked");
+        httpRequest.setValidResponseContent("is not well");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations, the body was streamed rather than logged
+        this.j.assertBuildStatus(Result.FAILURE, build);
+        this.j.assertLogContains("Fail: Response doesn't contain expected content 'is not well'", build);
+        this.j.assertLogNotContains(ALL_IS_WELL, build);
+    }
+
+    @Test
+    void badStreamedContentDiscardsOutputFile() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setValidResponseContent("bad content");
+        httpRequest.setOutputFile("file.txt");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatus(Result.FAILURE, build);
+        this.j.assertLogContains("Fail: Response doesn't contain expected content 'bad content'", build);
+        assertFalse(build.getWorkspace().child("file.txt").exists());
+    }
+
     @Test
     void responseMatchAcceptedMimeType() throws Exception {
         // Prepare the server
@@ -614,6 +749,56 @@ class HttpRequestTest extends HttpRequestTestBase {
         this.j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", build);
     }
 
+    @Test
+    void outputFileWritesThroughSymbolicLinks() throws Exception {
+        Assumptions.assumeFalse(Functions.isWindows(), "symbolic links need privileges on Windows");
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setOutputFile("file.txt");
+
+        // Run build with the output file linking to another file
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        workspace.child("linked.txt").write("replaced", "UTF-8");
+        workspace.child("file.txt").symlinkTo("linked.txt", TaskListener.NULL);
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations: the linked file got the body and the link is still there
+        this.j.assertBuildStatusSuccess(build);
+        assertEquals(ALL_IS_WELL, workspace.child("linked.txt").readToString());
+        assertTrue(Files.isSymbolicLink(Paths.get(workspace.child("file.txt").getRemote())));
+        assertEquals(ALL_IS_WELL, workspace.child("file.txt").readToString());
+    }
+
+    @Test
+    void outputFileKeepsItsPermissions() throws Exception {
+        Assumptions.assumeFalse(Functions.isWindows(), "POSIX permissions are not available on Windows");
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setOutputFile("file.txt");
+
+        // Run build with an output file only its owner may read
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        workspace.child("file.txt").write("replaced", "UTF-8");
+        Path file = Paths.get(workspace.child("file.txt").getRemote());
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        assertEquals(ALL_IS_WELL, workspace.child("file.txt").readToString());
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(file));
+    }
+
     @Test
     void canPutResponseInOutputFileWhenNotSetToGoToConsole() throws Exception {
         // Prepare the server
@@ -642,6 +827,163 @@ class HttpRequestTest extends HttpRequestTestBase {
         this.j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", build);
     }
 
+    @Test
+    void rejectedResponseKeepsPreviousOutputFile() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setOutputFile("file.txt");
+        httpRequest.setValidResponseContent("bad content");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        workspace.child("file.txt").write("previous", "UTF-8");
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatus(Result.FAILURE, build);
+        assertEquals("previous", workspace.child("file.txt").readToString());
+        // No temporary file is left behind
+        assertEquals(1, workspace.list().size());
+    }
+
+    @Test
+    void interruptedDownloadIsResumed() throws Exception {
+        // Prepare the server
+        String content = "0123456789".repeat(10000);
+        registerInterruptedDownload(content);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/interrupted");
+        httpRequest.setOutputFile("file.txt");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        this.j.assertLogContains("resuming", build);
+        assertEquals(content, workspace.child("file.txt").readToString());
+        assertEquals(1, workspace.list().size());
+    }
+
+    @Test
+    void interruptedEncodedDownloadIsNotResumed() throws Exception {
+        // Prepare the server, with a body that does not compress to almost nothing
+        Random random = new Random(0);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            content.append((char) ('a' + random.nextInt(26)));
+        }
+        registerEncodedInterruptedDownload(content.toString());
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/encodedInterrupted");
+        httpRequest.setOutputFile("file.txt");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations: ranges of the gzipped body cannot continue the decoded one
+        this.j.assertBuildStatus(Result.FAILURE, build);
+        this.j.assertLogNotContains("resuming", build);
+        assertFalse(workspace.child("file.txt").exists());
+    }
+
+    @Test
+    void downloadsSegmentsInParallel() throws Exception {
+        // Prepare the server
+        String content = "0123456789".repeat(10000);
+        registerRangeDownload(content);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/ranges");
+        httpRequest.setOutputFile("file.txt");
+        httpRequest.setSegments(4);
+        httpRequest.setOutputFileDigest("SHA-256:" + HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8))));
+
+        // Run build with segments small enough for the body
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        project.getBuildersList().add(httpRequest);
+        System.setProperty(HttpRequestExecution.MIN_SEGMENT_BYTES_PROPERTY, "1024");
+        FreeStyleBuild build;
+        try {
+            build = project.scheduleBuild2(0).get();
+        } finally {
+            System.clearProperty(HttpRequestExecution.MIN_SEGMENT_BYTES_PROPERTY);
+        }
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        this.j.assertLogContains("in 4 segments", build);
+        this.j.assertLogContains("Success: SHA-256 digest of the response matches", build);
+        assertEquals(content, workspace.child("file.txt").readToString());
+    }
+
+    @Test
+    void encodedBodiesAreNotDownloadedInSegments() throws Exception {
+        // Prepare the server
+        String content = "0123456789".repeat(10000);
+        registerEncodedRangeDownload(content);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/encodedRanges");
+        httpRequest.setOutputFile("file.txt");
+        httpRequest.setSegments(4);
+
+        // Run build with segments small enough for the body
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        project.getBuildersList().add(httpRequest);
+        System.setProperty(HttpRequestExecution.MIN_SEGMENT_BYTES_PROPERTY, "1");
+        FreeStyleBuild build;
+        try {
+            build = project.scheduleBuild2(0).get();
+        } finally {
+            System.clearProperty(HttpRequestExecution.MIN_SEGMENT_BYTES_PROPERTY);
+        }
+
+        // Check expectations
+        this.j.assertBuildStatusSuccess(build);
+        this.j.assertLogContains("Downloading over a single connection", build);
+        assertEquals(content, workspace.child("file.txt").readToString());
+    }
+
+    @Test
+    void digestMismatchKeepsPreviousOutputFile() throws Exception {
+        // Prepare the server
+        registerRequestChecker(HttpMode.GET);
+
+        // Prepare HttpRequest
+        HttpRequest httpRequest = new HttpRequest(baseURL() + "/doGET");
+        httpRequest.setOutputFile("file.txt");
+        httpRequest.setOutputFileDigest("SHA-256:00");
+
+        // Run build
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        FilePath workspace = j.jenkins.getWorkspaceFor(project);
+        workspace.child("file.txt").write("previous", "UTF-8");
+        project.getBuildersList().add(httpRequest);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations
+        this.j.assertBuildStatus(Result.FAILURE, build);
+        this.j.assertLogContains("expected 00", build);
+        assertEquals("previous", workspace.child("file.txt").readToString());
+    }
+
     @Test
     void timeoutFailsTheBuild() throws Exception {
         // Prepare the server
@@ -764,6 +1106,103 @@ class HttpRequestTest extends HttpRequestTestBase {
         this.j.assertLogContains("Success: Status code 200 is in the accepted range: 100:399", build);
     }
 
+    @Test
+    void credentialsAreResolvedOncePerRun() throws Exception {
+        // Prepare the server
+        registerBasicAuth();
+
+        // Prepare the authentication
+        registerBasicCredential("keyname1", "username1", "password1");
+
+        // Prepare two requests with the same credential
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        for (int i = 0; i < 2; i++) {
+            HttpRequest httpRequest = new HttpRequest(baseURL() + "/basicAuth?page=" + i);
+            httpRequest.setAuthentication("keyname1");
+            project.getBuildersList().add(httpRequest);
+        }
+
+        // Run build
+        CountingCredentialsProvider.LOOKUPS.set(0);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations: the providers were walked for the first request only
+        this.j.assertBuildStatusSuccess(build);
+        assertEquals(1, CountingCredentialsProvider.LOOKUPS.get());
+    }
+
+    @TestExtension("credentialsAreResolvedOncePerRun")
+    public static final class CountingCredentialsProvider extends CredentialsProvider {
+        static final AtomicInteger LOOKUPS = new AtomicInteger();
+
+        @NonNull
+        @Override
+        public <C extends Credentials> List<C> getCredentialsInItem(@NonNull Class<C> type, @NonNull Item item,
+                                                                   Authentication authentication,
+                                                                   @NonNull List<DomainRequirement> domainRequirements) {
+            if (item instanceof FreeStyleProject) {
+                LOOKUPS.incrementAndGet();
+            }
+            return List.of();
+        }
+
+        @NonNull
+        @Override
+        public <C extends Credentials> List<C> getCredentialsInItemGroup(@NonNull Class<C> type, ItemGroup itemGroup,
+                                                                        Authentication authentication,
+                                                                        @NonNull List<DomainRequirement> domainRequirements) {
+            return List.of();
+        }
+    }
+
+    @Test
+    void credentialUsageIsRecordedOncePerRun() throws Exception {
+        // Prepare the server
+        registerBasicAuth();
+
+        // Prepare the authentication
+        registerBasicCredential("keyname1", "username1", "password1");
+
+        // Prepare two requests with the same credential
+        FreeStyleProject project = this.j.createFreeStyleProject();
+        for (int i = 0; i < 2; i++) {
+            HttpRequest httpRequest = new HttpRequest(baseURL() + "/basicAuth?page=" + i);
+            httpRequest.setAuthentication("keyname1");
+            project.getBuildersList().add(httpRequest);
+        }
+
+        // Run build
+        CountingUseListener.USES.set(0);
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+        // Check expectations: every usage recorded is a write of the fingerprint
+        this.j.assertBuildStatusSuccess(build);
+        assertEquals(1, CountingUseListener.USES.get());
+        Fingerprint fingerprint = CredentialsProvider.getFingerprintOf(CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentialsInItem(StandardCredentials.class, project, ACL.SYSTEM2, List.of()),
+                CredentialsMatchers.withId("keyname1")));
+        assertNotNull(fingerprint);
+        assertTrue(fingerprint.getRangeSet(project).includes(build.getNumber()));
+    }
+
+    @TestExtension("credentialUsageIsRecordedOncePerRun")
+    public static final class CountingUseListener implements CredentialsUseListener {
+        static final AtomicInteger USES = new AtomicInteger();
+
+        @Override
+        public void onUse(Credentials c, Run run) {
+            USES.incrementAndGet();
+        }
+
+        @Override
+        public void onUse(Credentials c, Node node) {
+        }
+
+        @Override
+        public void onUse(Credentials c, Item item) {
+        }
+    }
+
     @Test
     void testFormAuthentication() throws Exception {
         final String paramUsername = "username";
@@ -1004,6 +1443,26 @@ class HttpRequestTest extends HttpRequestTestBase {
         respSupplier.close();
     }
 
+    @Test
+    void responseContentSupplierMatchesContentWhileSpooling() throws Exception {
+        // Prepare test context
+        CloseableHttpResponse response = HttpResponseAdapter.adapt(new BasicClassicHttpResponse(200, "OK"));
+        response.setEntity(new StringEntity(ALL_IS_WELL));
+        // Run test with a threshold below the response size
+        System.setProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY, "4");
+        ResponseContentSupplier respSupplier;
+        try {
+            respSupplier = new ResponseContentSupplier(ResponseHandle.STRING, response, "is well");
+        } finally {
+            System.clearProperty(ResponseContentSupplier.SPILL_THRESHOLD_PROPERTY);
+        }
+        // Check expectations: the content was found before the spooled body is read
+        assertTrue(respSupplier.getContentMatcher().isFound());
+        assertEquals(ALL_IS_WELL, respSupplier.getContent());
+        respSupplier.deleteSpillFile();
+        respSupplier.close();
+    }
+
     @Test
     void testFileUpload() throws Exception {
         // Prepare the server
@@ -2,12 +2,18 @@ package jenkins.plugins.http_request;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Enumeration;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import jakarta.servlet.ServletException;
 
@@ -18,6 +24,7 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MultiPart;
 import org.eclipse.jetty.http.MultiPartConfig;
 import org.eclipse.jetty.http.MultiPartFormData;
+import org.eclipse.jetty.io.Content;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.Callback;
@@ -289,6 +296,45 @@ class Registers {
         });
     }
 
+    static void registerCheckCompressedRequestBody(final String expectedBody) {
+        // Check that request body is gzip compressed and equals to expectedBody once decompressed
+        registerHandler("/checkCompressedRequestBody", HttpMode.POST, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) throws IOException {
+                assertEquals("gzip", request.getHeaders().get(HttpHeader.CONTENT_ENCODING));
+                try (InputStream in = new GZIPInputStream(Content.Source.asInputStream(request))) {
+                    assertEquals(expectedBody, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                return okAllIsWell(response, callback);
+            }
+        });
+    }
+
+    static void registerBrotli(final String content) {
+        // Serve content as a brotli stream made of a single uncompressed meta-block
+        registerHandler("/brotli", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                assertTrue(request.getHeaders().get(HttpHeader.ACCEPT_ENCODING).contains("br"));
+                byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+                int length = raw.length - 1;
+                ByteBuffer brotli = ByteBuffer.allocate(raw.length + 4);
+                // window bits 16, not last, 4 nibbles of length, then uncompressed
+                brotli.put((byte) ((length & 0xF) << 4));
+                brotli.put((byte) (length >> 4));
+                brotli.put((byte) (((length >> 12) & 0xF) | 0x10));
+                brotli.put(raw);
+                // last and empty meta-block
+                brotli.put((byte) 0x03);
+                response.getHeaders().add(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toString());
+                response.getHeaders().add(HttpHeader.CONTENT_ENCODING, "br");
+                response.setStatus(HttpStatus.OK_200);
+                response.write(true, brotli.flip(), callback);
+                return true;
+            }
+        });
+    }
+
     static void registerFileUpload(final File uploadFile, final String responseText) {
         registerHandler("/uploadFile", HttpMode.POST, new SimpleHandler() {
 
@@ -380,6 +426,263 @@ class Registers {
         });
     }
 
+    static void registerRemotePort() {
+        // Answer with the client port, so callers can tell whether a connection was reused
+        registerHandler("/remotePort", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                return okText(response, "port:" + Request.getRemotePort(request), callback);
+            }
+        });
+    }
+
+    static void registerETag() {
+        // Answer conditional requests for the current entity tag with 304 Not Modified
+        registerHandler("/etag", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                response.getHeaders().put(HttpHeader.ETAG, "\"v1\"");
+                if ("\"v1\"".equals(request.getHeaders().get(HttpHeader.IF_NONE_MATCH))) {
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                    callback.succeeded();
+                    return true;
+                }
+                return okAllIsWell(response, callback);
+            }
+        });
+    }
+
+    static void registerChunkedBody(final String first, final String second) {
+        // Send the body in two chunks, the second one a moment after the first was read
+        registerHandler("/chunked", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                response.setStatus(HttpStatus.OK_200);
+                response.getHeaders().put(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toString());
+                response.write(false, ByteBuffer.wrap(first.getBytes(StandardCharsets.UTF_8)), Callback.from(() -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    response.write(true, ByteBuffer.wrap(second.getBytes(StandardCharsets.UTF_8)), callback);
+                }, callback::failed));
+                return true;
+            }
+        });
+    }
+
+    static void registerInterruptedDownload(final String content) {
+        // Drop the connection halfway through the body, unless the rest of it is asked for
+        registerHandler("/interrupted", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+                response.getHeaders().put(HttpHeader.ACCEPT_RANGES, "bytes");
+                response.getHeaders().put(HttpHeader.ETAG, "\"v1\"");
+                response.getHeaders().put(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toString());
+
+                String range = request.getHeaders().get(HttpHeader.RANGE);
+                if (range != null) {
+                    assertEquals("\"v1\"", request.getHeaders().get(HttpHeader.IF_RANGE));
+                    int offset = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+                    response.getHeaders().put(HttpHeader.CONTENT_RANGE,
+                            "bytes " + offset + "-" + (bytes.length - 1) + "/" + bytes.length);
+                    response.getHeaders().put(HttpHeader.CONTENT_LENGTH, bytes.length - offset);
+                    response.write(true, ByteBuffer.wrap(bytes, offset, bytes.length - offset), callback);
+                    return true;
+                }
+
+                response.setStatus(HttpStatus.OK_200);
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, bytes.length);
+                response.write(false, ByteBuffer.wrap(bytes, 0, bytes.length / 2), Callback.from(
+                        () -> callback.failed(new IOException("connection dropped")), callback::failed));
+                return true;
+            }
+        });
+    }
+
+    static void registerEncodedInterruptedDownload(final String content) {
+        // Drop the connection halfway through the gzipped body, serving ranges of the gzipped bytes
+        registerHandler("/encodedInterrupted", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) throws IOException {
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                    out.write(content.getBytes(StandardCharsets.UTF_8));
+                }
+                byte[] bytes = gzipped.toByteArray();
+                response.getHeaders().put(HttpHeader.ACCEPT_RANGES, "bytes");
+                response.getHeaders().put(HttpHeader.ETAG, "\"v1\"");
+                response.getHeaders().put(HttpHeader.CONTENT_ENCODING, "gzip");
+
+                String range = request.getHeaders().get(HttpHeader.RANGE);
+                if (range != null) {
+                    int offset = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+                    response.getHeaders().put(HttpHeader.CONTENT_RANGE,
+                            "bytes " + offset + "-" + (bytes.length - 1) + "/" + bytes.length);
+                    response.getHeaders().put(HttpHeader.CONTENT_LENGTH, bytes.length - offset);
+                    response.write(true, ByteBuffer.wrap(bytes, offset, bytes.length - offset), callback);
+                    return true;
+                }
+
+                response.setStatus(HttpStatus.OK_200);
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, bytes.length);
+                response.write(false, ByteBuffer.wrap(bytes, 0, bytes.length / 2), Callback.from(
+                        () -> callback.failed(new IOException("connection dropped")), callback::failed));
+                return true;
+            }
+        });
+    }
+
+    static void registerRangeDownload(final String content) {
+        // Serve the body or a single byte range of it, announcing its length on HEAD
+        SimpleHandler handler = new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+                response.getHeaders().put(HttpHeader.ACCEPT_RANGES, "bytes");
+                response.getHeaders().put(HttpHeader.ETAG, "\"v1\"");
+                response.getHeaders().put(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toString());
+
+                String range = request.getHeaders().get(HttpHeader.RANGE);
+                if (range == null) {
+                    response.setStatus(HttpStatus.OK_200);
+                    response.getHeaders().put(HttpHeader.CONTENT_LENGTH, bytes.length);
+                    if ("HEAD".equals(request.getMethod())) {
+                        callback.succeeded();
+                    } else {
+                        response.write(true, ByteBuffer.wrap(bytes), callback);
+                    }
+                    return true;
+                }
+                assertEquals("\"v1\"", request.getHeaders().get(HttpHeader.IF_RANGE));
+                String[] fromTo = range.substring("bytes=".length()).split("-");
+                int from = Integer.parseInt(fromTo[0]);
+                int to = Integer.parseInt(fromTo[1]);
+                response.setStatus(HttpStatus.PARTIAL_CONTENT_206);
+                response.getHeaders().put(HttpHeader.CONTENT_RANGE, "bytes " + from + "-" + to + "/" + bytes.length);
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, to - from + 1);
+                response.write(true, ByteBuffer.wrap(bytes, from, to - from + 1), callback);
+                return true;
+            }
+        };
+        registerHandler("/ranges", HttpMode.HEAD, handler);
+        registerHandler("/ranges", HttpMode.GET, handler);
+    }
+
+    static void registerEncodedRangeDownload(final String content) {
+        // Announce ranges of a body that is always sent gzipped, whatever the client accepts
+        SimpleHandler handler = new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) throws IOException {
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                    out.write(content.getBytes(StandardCharsets.UTF_8));
+                }
+                response.setStatus(HttpStatus.OK_200);
+                response.getHeaders().put(HttpHeader.ACCEPT_RANGES, "bytes");
+                response.getHeaders().put(HttpHeader.ETAG, "\"v1\"");
+                response.getHeaders().put(HttpHeader.CONTENT_ENCODING, "gzip");
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, gzipped.size());
+                if ("HEAD".equals(request.getMethod())) {
+                    callback.succeeded();
+                } else {
+                    response.write(true, ByteBuffer.wrap(gzipped.toByteArray()), callback);
+                }
+                return true;
+            }
+        };
+        registerHandler("/encodedRanges", HttpMode.HEAD, handler);
+        registerHandler("/encodedRanges", HttpMode.GET, handler);
+    }
+
+    static void registerUnavailableOnce() {
+        // Ask for a retry on the first call only
+        final AtomicInteger calls = new AtomicInteger();
+        registerHandler("/unavailableOnce", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                if (calls.getAndIncrement() == 0) {
+                    response.getHeaders().put(HttpHeader.RETRY_AFTER, "0");
+                    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+                    callback.succeeded();
+                    return true;
+                }
+                return okAllIsWell(response, callback);
+            }
+        });
+    }
+
+    static void registerEncodedUnavailableOnce() {
+        // Ask for a retry with a gzipped body on the first call only, then answer in the identity encoding
+        final AtomicInteger calls = new AtomicInteger();
+        registerHandler("/encodedUnavailableOnce", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) throws IOException {
+                if (calls.getAndIncrement() == 0) {
+                    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                        out.write("Try again".getBytes(StandardCharsets.UTF_8));
+                    }
+                    response.getHeaders().put(HttpHeader.RETRY_AFTER, "0");
+                    response.getHeaders().put(HttpHeader.CONTENT_ENCODING, "gzip");
+                    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+                    response.write(true, ByteBuffer.wrap(gzipped.toByteArray()), callback);
+                    return true;
+                }
+                return okAllIsWell(response, callback);
+            }
+        });
+    }
+
+    static AtomicInteger registerSlowResponse() {
+        // Answer after a while, counting the calls
+        final AtomicInteger calls = new AtomicInteger();
+        registerHandler("/slow", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ex) {
+                    // do nothing the sleep will be interrupted when the test ends
+                }
+                return okAllIsWell(response, callback);
+            }
+        });
+        return calls;
+    }
+
+    static AtomicInteger registerCacheable() {
+        // Answer with a fresh response, public when asked for, counting the calls
+        final AtomicInteger calls = new AtomicInteger();
+        registerHandler("/cacheable", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                calls.incrementAndGet();
+                String query = request.getHttpURI().getQuery();
+                response.getHeaders().put(HttpHeader.CACHE_CONTROL,
+                        "public".equals(query) ? "public, max-age=60" : "max-age=60");
+                return okAllIsWell(response, callback);
+            }
+        });
+        return calls;
+    }
+
+    static void registerServerError() {
+        // Always fail on the server side
+        registerHandler("/serverError", HttpMode.GET, new SimpleHandler() {
+            @Override
+            boolean doHandle(Request request, Response response, Callback callback) {
+                Response.writeError(request, response, callback, HttpStatus.INTERNAL_SERVER_ERROR_500, "Throwing status 500 for test");
+                return true;
+            }
+        });
+    }
+
     private static void registerHandler(String target, HttpMode method, SimpleHandler handler) {
         HttpRequestTestBase.registerHandler(target, method, handler);
     }
@@ -0,0 +1,48 @@
+package jenkins.plugins.http_request.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import hudson.AbortException;
+
+class BulkheadTest {
+
+    private static final PrintStream LOGGER = new PrintStream(OutputStream.nullOutputStream());
+
+    @Test
+    void shrinkingKeepsTheRequestsInFlight() throws Exception {
+        String hostPattern = UUID.randomUUID() + ".example.com";
+        Bulkhead bulkhead = Bulkhead.of(new ConcurrencyLimit(hostPattern, 2));
+        Bulkhead.Slot first = bulkhead.acquire(0, LOGGER);
+        Bulkhead.Slot second = bulkhead.acquire(0, LOGGER);
+
+        // the same bulkhead, still counting both requests
+        assertSame(bulkhead, Bulkhead.of(new ConcurrencyLimit(hostPattern, 1)));
+        assertEquals(2, bulkhead.getInFlight());
+        assertThrows(AbortException.class, () -> bulkhead.acquire(0, LOGGER));
+
+        first.close();
+        assertThrows(AbortException.class, () -> bulkhead.acquire(0, LOGGER));
+
+        second.close();
+        bulkhead.acquire(0, LOGGER).close();
+    }
+
+    @Test
+    void growingFreesSlotsAtOnce() throws Exception {
+        String hostPattern = UUID.randomUUID() + ".example.com";
+        Bulkhead bulkhead = Bulkhead.of(new ConcurrencyLimit(hostPattern, 1));
+        try (Bulkhead.Slot first = bulkhead.acquire(0, LOGGER)) {
+            Bulkhead.of(new ConcurrencyLimit(hostPattern, 2));
+            bulkhead.acquire(0, LOGGER).close();
+        }
+        assertEquals(0, bulkhead.getInFlight());
+    }
+}
@@ -0,0 +1,55 @@
+package jenkins.plugins.http_request.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+    @Test
+    void onlyTheProbeDecidesWhetherTheCircuitCloses() throws Exception {
+        CircuitBreakerSettings settings = openingOnFirstFailure();
+        CircuitBreaker breaker = CircuitBreaker.of("http://" + UUID.randomUUID());
+
+        // let through while closed, completes after the circuit opened and went half open
+        CircuitBreaker.Permit late = breaker.acquire();
+        breaker.acquire().record(settings, true, 0);
+        CircuitBreaker.Permit probe = breaker.acquire();
+
+        late.record(settings, false, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+
+        probe.record(settings, false, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void aReleasedProbeLetsAnotherOneThrough() throws Exception {
+        CircuitBreakerSettings settings = openingOnFirstFailure();
+        CircuitBreaker breaker = CircuitBreaker.of("http://" + UUID.randomUUID());
+
+        CircuitBreaker.Permit late = breaker.acquire();
+        breaker.acquire().record(settings, true, 0);
+        CircuitBreaker.Permit probe = breaker.acquire();
+
+        // giving back a call of another state does not free the probe
+        late.release();
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+
+        probe.release();
+        assertNotNull(breaker.acquire());
+    }
+
+    private static CircuitBreakerSettings openingOnFirstFailure() {
+        CircuitBreakerSettings settings = new CircuitBreakerSettings();
+        settings.setWindowSize(1);
+        settings.setMinimumCalls(1);
+        settings.setOpenDurationSeconds(0);
+        return settings;
+    }
+}
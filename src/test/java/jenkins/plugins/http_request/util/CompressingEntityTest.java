@@ -0,0 +1,45 @@
+package jenkins.plugins.http_request.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.junit.jupiter.api.Test;
+
+class CompressingEntityTest {
+
+    private static final byte[] BODY = "All is well, all is well, all is well".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void contentIsTheGzippedBody() throws IOException {
+        CompressingEntity entity = new CompressingEntity(new ByteArrayEntity(BODY, ContentType.TEXT_PLAIN), CompressingEntity.GZIP);
+        try (InputStream in = new GZIPInputStream(entity.getContent())) {
+            assertArrayEquals(BODY, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void contentIsTheDeflatedBody() throws IOException {
+        CompressingEntity entity = new CompressingEntity(new ByteArrayEntity(BODY, ContentType.TEXT_PLAIN), CompressingEntity.DEFLATE);
+        try (InputStream in = new InflaterInputStream(entity.getContent())) {
+            assertArrayEquals(BODY, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void contentIsWhatIsWritten() throws IOException {
+        CompressingEntity entity = new CompressingEntity(new ByteArrayEntity(BODY, ContentType.TEXT_PLAIN), CompressingEntity.GZIP);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        entity.writeTo(written);
+        try (InputStream in = entity.getContent()) {
+            assertArrayEquals(written.toByteArray(), in.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package jenkins.plugins.http_request.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ContentMatcherTest {
+
+    @Test
+    void matchesAcrossUpdates() {
+        ContentMatcher matcher = new ContentMatcher(bytes("is well"));
+        matcher.update(bytes("All is w"), 0, 8);
+        assertFalse(matcher.isFound());
+        matcher.update(bytes("ell"), 0, 3);
+        assertTrue(matcher.isFound());
+    }
+
+    @Test
+    void fallsBackOnPartialMatches() {
+        // the first "aab" is a false start, the match begins on its second byte
+        ContentMatcher matcher = new ContentMatcher(bytes("aab"));
+        matcher.update(bytes("aa"), 0, 2);
+        matcher.update(bytes("ab"), 0, 2);
+        assertTrue(matcher.isFound());
+    }
+
+    @Test
+    void missingContentIsNotFound() {
+        ContentMatcher matcher = new ContentMatcher(bytes("is not well"));
+        matcher.update(bytes("All is w"), 0, 8);
+        matcher.update(bytes("ell"), 0, 3);
+        assertFalse(matcher.isFound());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
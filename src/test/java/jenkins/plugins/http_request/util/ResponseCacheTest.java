@@ -0,0 +1,88 @@
+package jenkins.plugins.http_request.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+class ResponseCacheTest {
+
+    @Test
+    void evictedEntriesAreServedFromDisk() {
+        System.setProperty(ResponseCache.MAX_TOTAL_BYTES_PROPERTY, "1");
+        try {
+            BasicHttpResponse response = new BasicHttpResponse(HttpStatus.SC_OK);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60");
+            response.setHeader(HttpHeaders.ETAG, "\"v1\"");
+            byte[] body = "All is well".getBytes(StandardCharsets.UTF_8);
+            String key = ResponseCache.key("http://localhost/disk", List.of(), "");
+
+            // too large for memory, the entry goes straight to disk
+            ResponseCache.put(key, ResponseCache.Entry.of(response, body));
+
+            ResponseCache.Entry entry = ResponseCache.get(key);
+            assertNotNull(entry);
+            assertArrayEquals(body, entry.getBody());
+            assertEquals("\"v1\"", entry.getETag());
+            assertTrue(entry.isFresh());
+            ResponseCache.remove(key);
+        } finally {
+            System.clearProperty(ResponseCache.MAX_TOTAL_BYTES_PROPERTY);
+        }
+    }
+
+    @Test
+    void entriesStoredAgainReplaceTheirCopyOnDisk() {
+        System.setProperty(ResponseCache.MAX_TOTAL_BYTES_PROPERTY, "1");
+        try {
+            BasicHttpResponse response = new BasicHttpResponse(HttpStatus.SC_OK);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60");
+            String key = ResponseCache.key("http://localhost/replaced", List.of(), "");
+
+            ResponseCache.put(key, ResponseCache.Entry.of(response, "first".getBytes(StandardCharsets.UTF_8)));
+            ResponseCache.put(key, ResponseCache.Entry.of(response, "second".getBytes(StandardCharsets.UTF_8)));
+
+            ResponseCache.Entry entry = ResponseCache.get(key);
+            assertNotNull(entry);
+            assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), entry.getBody());
+            ResponseCache.remove(key);
+            assertNull(ResponseCache.get(key));
+        } finally {
+            System.clearProperty(ResponseCache.MAX_TOTAL_BYTES_PROPERTY);
+        }
+    }
+
+    @Test
+    void onlyPublicAuthenticatedResponsesAreStorable() {
+        BasicHttpResponse response = new BasicHttpResponse(HttpStatus.SC_OK);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60");
+        assertTrue(ResponseCache.isStorable(response, false));
+        assertFalse(ResponseCache.isStorable(response, true));
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=60");
+        assertTrue(ResponseCache.isStorable(response, true));
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=60");
+        assertFalse(ResponseCache.isStorable(response, false));
+    }
+
+    @Test
+    void keysCoverTheCredentialsThemselves() {
+        String url = "http://localhost/";
+        assertEquals(ResponseCache.key(url, List.of(), RequestFingerprint.of("id", "secret")),
+                ResponseCache.key(url, List.of(), RequestFingerprint.of("id", "secret")));
+        assertNotEquals(ResponseCache.key(url, List.of(), RequestFingerprint.of("id", "secret")),
+                ResponseCache.key(url, List.of(), RequestFingerprint.of("id", "other secret")));
+    }
+}